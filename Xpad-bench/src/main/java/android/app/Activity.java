@@ -0,0 +1,5 @@
+package android.app;
+
+//Stand-in so XpadDevice compiles on a plain JDK, it only keeps a reference.
+public class Activity {
+}
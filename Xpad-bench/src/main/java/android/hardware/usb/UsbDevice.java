@@ -0,0 +1,25 @@
+package android.hardware.usb;
+
+//Stand-in describing a device with a given VID/PID and interfaces.
+public class UsbDevice {
+	private final int mVendorId, mProductId;
+	private final UsbInterface[] mInterfaces;
+
+	public UsbDevice(int vendorId, int productId, UsbInterface[] interfaces)
+	{
+		mVendorId = vendorId;
+		mProductId = productId;
+		mInterfaces = interfaces;
+	}
+
+	public int getVendorId(){
+		return mVendorId;}
+	public int getProductId(){
+		return mProductId;}
+	public int getInterfaceCount(){
+		return mInterfaces.length;}
+	public UsbInterface getInterface(int i){
+		return mInterfaces[i];}
+	public String getDeviceName(){
+		return "/dev/bus/usb/bench";}
+}
@@ -0,0 +1,17 @@
+package android.hardware.usb;
+
+//Stand-in endpoint, only the packet size matters to the driver.
+public class UsbEndpoint {
+	private final int mAddress, mMaxPacketSize;
+
+	public UsbEndpoint(int address, int maxPacketSize)
+	{
+		mAddress = address;
+		mMaxPacketSize = maxPacketSize;
+	}
+
+	public int getAddress(){
+		return mAddress;}
+	public int getMaxPacketSize(){
+		return mMaxPacketSize;}
+}
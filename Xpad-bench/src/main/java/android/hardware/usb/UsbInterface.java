@@ -0,0 +1,20 @@
+package android.hardware.usb;
+
+//Stand-in interface with an in and an out endpoint, in that order.
+public class UsbInterface {
+	private final int mId;
+	private final UsbEndpoint[] mEndpoints;
+
+	public UsbInterface(int id, UsbEndpoint in, UsbEndpoint out)
+	{
+		mId = id;
+		mEndpoints = new UsbEndpoint[] { in, out };
+	}
+
+	public int getId(){
+		return mId;}
+	public int getEndpointCount(){
+		return mEndpoints.length;}
+	public UsbEndpoint getEndpoint(int i){
+		return mEndpoints[i];}
+}
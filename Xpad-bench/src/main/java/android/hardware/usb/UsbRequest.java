@@ -0,0 +1,15 @@
+package android.hardware.usb;
+
+import java.nio.ByteBuffer;
+
+//Stand-in request that never completes.
+public class UsbRequest {
+	public boolean initialize(UsbDeviceConnection connection, UsbEndpoint endpoint){
+		return true;}
+	public boolean queue(ByteBuffer buffer, int length){
+		return true;}
+	public boolean cancel(){
+		return true;}
+	public void close(){
+	}
+}
@@ -0,0 +1,14 @@
+package android.os;
+
+//Stand-in for the thread priority calls XpadReader makes, priorities are
+//ignored off device.
+public class Process {
+	public static final int THREAD_PRIORITY_DEFAULT = 0;
+	public static final int THREAD_PRIORITY_BACKGROUND = 10;
+	public static final int THREAD_PRIORITY_DISPLAY = -4;
+	public static final int THREAD_PRIORITY_URGENT_DISPLAY = -8;
+
+	public static void setThreadPriority(int priority)
+	{
+	}
+}
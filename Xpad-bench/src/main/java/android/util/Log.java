@@ -0,0 +1,13 @@
+package android.util;
+
+//Stand-in that drops everything, logging isn't what we're measuring.
+public final class Log {
+	public static int d(String tag, String msg){
+		return 0;}
+	public static int i(String tag, String msg){
+		return 0;}
+	public static int w(String tag, String msg){
+		return 0;}
+	public static int e(String tag, String msg){
+		return 0;}
+}
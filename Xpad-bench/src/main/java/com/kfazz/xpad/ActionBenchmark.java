@@ -0,0 +1,86 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Action resolution: one event through a profile with buttons, a chord and
+//axis thresholds, and a whole frame of four players (an event each, then
+//frame() and a query per action). Run with -prof gc, both should be 0 B/op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionBenchmark {
+
+	static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3, FIRE = 4, SPECIAL = 5, MODE = 6;
+	static final int PLAYERS = 4;
+
+	private XpadActionProfile.Compiled mProfile;
+	private XpadActionMap mMap;
+	private XpadEventMsg[] mEvents;
+	private int mNext;
+
+	static XpadActionProfile profile()
+	{
+		return new XpadActionProfile("bench")
+				.bindButton(UP, XpadState.BTN_D_UP)
+				.bindButton(DOWN, XpadState.BTN_D_DOWN)
+				.bindButton(LEFT, XpadState.BTN_D_LEFT)
+				.bindButton(RIGHT, XpadState.BTN_D_RIGHT)
+				.bindAxis(UP, XpadState.AXIS_LY, 0.5f)
+				.bindAxis(DOWN, XpadState.AXIS_LY, -0.5f)
+				.bindAxis(LEFT, XpadState.AXIS_LX, -0.5f)
+				.bindAxis(RIGHT, XpadState.AXIS_LX, 0.5f)
+				.bindButton(FIRE, XpadState.BTN_A | XpadState.BTN_RB)
+				.bindAxis(FIRE, XpadState.AXIS_RT, 0.5f)
+				.bindChord(SPECIAL, XpadState.BTN_LB | XpadState.BTN_A)
+				.bindButton(MODE, XpadState.BTN_BACK);
+	}
+
+	@Setup
+	public void setup()
+	{
+		mProfile = profile().compile();
+		mMap = new XpadActionMap(profile());
+		XpadLayout layout = XpadLayout.find(0x045e, 0x028e);
+		mEvents = new XpadEventMsg[Reports.SEQUENCE];
+		for (int i = 0; i < mEvents.length; i++)
+		{
+			mEvents[i] = new XpadEventMsg(null);
+			mEvents[i].set(Reports.direct(Reports.wired(i)), layout);
+			mEvents[i].setPlayer(1 + i % PLAYERS);
+		}
+	}
+
+	@Benchmark
+	public int resolve()
+	{
+		return mProfile.resolve(mEvents[mNext++ & (Reports.SEQUENCE - 1)]);
+	}
+
+	@Benchmark
+	public int frame()
+	{
+		for (int p = 0; p < PLAYERS; p++)
+			mMap.onXpadMotionEvent(mEvents[mNext++ & (Reports.SEQUENCE - 1)]);
+		mMap.frame();
+		int n = 0;
+		for (int p = 1; p <= PLAYERS; p++)
+			for (int a = UP; a <= MODE; a++)
+				if (mMap.wasPressed(p, a))
+					n++;
+		return n;
+	}
+}
@@ -0,0 +1,22 @@
+package com.kfazz.xpad;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//Entry point of benchmarks.jar. Takes the usual JMH arguments and always adds
+//the gc profiler, so gc.alloc.rate.norm (bytes allocated per op) is reported
+//for every benchmark next to its ops/s.
+public class BenchMain {
+
+	public static void main(String[] args) throws Exception
+	{
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
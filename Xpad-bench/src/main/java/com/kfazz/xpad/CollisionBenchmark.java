@@ -0,0 +1,145 @@
+package com.kfazz.xpad;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//One collision step the way GameWorld does it: move the obstacles, keep
+//SpatialGrid current, check every bullet against the obstacles near it.
+//bruteForce is the nested loop with a sqrt per pair it replaced. The
+//playfield grows with the obstacle count so they're as crowded as in the
+//game (12 to a 720p screen), then the grid's cost should grow with the
+//number of entities and the nested loop's with the number of pairs. With
+//-prof gc both should be 0 B/op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+	//a 720p screen at density 2, sizes as GameWorld works them out
+	static final float SCREEN_WIDTH = 1280, SCREEN_HEIGHT = 720;
+	static final int SCREEN_OBSTACLES = 12;
+	static final float BASE = 10;
+	static final float MIN_OBSTACLE = BASE * 2, MAX_OBSTACLE = BASE * 12;
+	static final float BULLET = BASE;
+	static final float DT = 1f / 60;
+
+	@Param({ "12", "48", "192" })
+	int obstacles;
+	@Param({ "64", "256", "1024" })
+	int bullets;
+
+	private float[] mX, mY, mVX, mVY, mSize;
+	private int[] mHandle;
+	private float[] mBX, mBY;
+	private float mWidth, mHeight;
+	private SpatialGrid<Object> mGrid;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(25);
+		float scale = (float) Math.sqrt(obstacles / (double) SCREEN_OBSTACLES);
+		mWidth = SCREEN_WIDTH * scale;
+		mHeight = SCREEN_HEIGHT * scale;
+		mX = new float[obstacles];
+		mY = new float[obstacles];
+		mVX = new float[obstacles];
+		mVY = new float[obstacles];
+		mSize = new float[obstacles];
+		mHandle = new int[obstacles];
+		mGrid = new SpatialGrid<Object>(MAX_OBSTACLE * 1.5f * 2, obstacles * 8);
+		for (int i = 0; i < obstacles; i++)
+		{
+			mX[i] = random.nextFloat() * mWidth;
+			mY[i] = random.nextFloat() * mHeight;
+			mVX[i] = (random.nextFloat() - 0.5f) * BASE * 18;
+			mVY[i] = (random.nextFloat() - 0.5f) * BASE * 18;
+			mSize[i] = MIN_OBSTACLE + random.nextFloat() * (MAX_OBSTACLE - MIN_OBSTACLE);
+			mHandle[i] = mGrid.add(Integer.valueOf(i), mX[i], mY[i], mSize[i] * 1.5f);
+		}
+		mBX = new float[bullets];
+		mBY = new float[bullets];
+		for (int i = 0; i < bullets; i++)
+		{
+			mBX[i] = random.nextFloat() * mWidth;
+			mBY[i] = random.nextFloat() * mHeight;
+		}
+	}
+
+	private void move()
+	{
+		for (int i = 0; i < obstacles; i++)
+		{
+			float x = mX[i] + mVX[i] * DT, y = mY[i] + mVY[i] * DT;
+			if (x < 0) x += mWidth; else if (x >= mWidth) x -= mWidth;
+			if (y < 0) y += mHeight; else if (y >= mHeight) y -= mHeight;
+			mX[i] = x;
+			mY[i] = y;
+		}
+	}
+
+	static boolean hit(float dx, float dy, float size)
+	{
+		float reach = Math.max(size, BULLET) + Math.min(size, BULLET) * 0.5f;
+		return (float) Math.sqrt(dx * dx + dy * dy) <= reach;
+	}
+
+	@Benchmark
+	public int grid()
+	{
+		move();
+		for (int i = 0; i < obstacles; i++)
+			mGrid.update(mHandle[i], mX[i], mY[i]);
+		int hits = 0;
+		for (int i = 0; i < bullets; i++)
+		{
+			int near = mGrid.query(mBX[i], mBY[i], BULLET);
+			for (int j = 0; j < near; j++)
+			{
+				int o = (Integer) mGrid.getResult(j);
+				float dx = mX[o] - mBX[i], dy = mY[o] - mBY[i];
+				float reach = Math.max(mSize[o], BULLET) + Math.min(mSize[o], BULLET) * 0.5f;
+				if (dx * dx + dy * dy <= reach * reach)
+				{
+					hits++;
+					break;
+				}
+			}
+		}
+		return hits;
+	}
+
+	@Benchmark
+	public int bruteForce()
+	{
+		move();
+		int hits = 0;
+		for (int i = 0; i < bullets; i++)
+		{
+			for (int o = 0; o < obstacles; o++)
+			{
+				if (hit(mX[o] - mBX[i], mY[o] - mBY[i], mSize[o]))
+				{
+					hits++;
+					break;
+				}
+			}
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,94 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//What the reader thread does with each completed request: XpadDevice.onReport()
+//through duplicate suppression, the layout decode and the subscription filter.
+//Nobody is subscribed, so events stop at passevent().
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+	private XpadDevice mWired, mWireless, mCalibrated;
+	private ByteBuffer[] mWiredReports, mWirelessReports;
+	private ByteBuffer mBattery, mNull;
+	private int mNext = 0;
+
+	@Setup
+	public void setup()
+	{
+		mWired = Reports.wiredPad();
+		mWireless = Reports.wirelessPad();
+		mCalibrated = Reports.wiredPad();
+		XpadCalibration c = new XpadCalibration();
+		c.left.deadzone = c.right.deadzone = 0.2f;
+		c.right.curve = 2;
+		c.leftTrigger.deadzone = c.rightTrigger.deadzone = 0.1f;
+		mCalibrated.setCalibration(c);
+		mWiredReports = Reports.wiredSequence();
+		mWirelessReports = Reports.wirelessSequence();
+		mBattery = Reports.direct(Reports.WIRELESS_BATTERY);
+		mNull = Reports.direct(Reports.WIRELESS_NULL);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mWired.XpadStop();
+		mWireless.XpadStop();
+		mCalibrated.XpadStop();
+	}
+
+	@Benchmark
+	public void wiredReport()
+	{
+		ByteBuffer b = mWiredReports[mNext++ & (Reports.SEQUENCE - 1)];
+		mWired.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+	}
+
+	//same, with radial deadzones and curves applied from the lookup tables
+	@Benchmark
+	public void wiredReportCalibrated()
+	{
+		ByteBuffer b = mWiredReports[mNext++ & (Reports.SEQUENCE - 1)];
+		mCalibrated.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+	}
+
+	//an idle pad repeating itself, stops at the 20 byte compare
+	@Benchmark
+	public void wiredDuplicate()
+	{
+		mWired.onReport(mWiredReports[0], Reports.WIRED_LENGTH, System.nanoTime());
+	}
+
+	@Benchmark
+	public void wirelessReport()
+	{
+		ByteBuffer b = mWirelessReports[mNext++ & (Reports.SEQUENCE - 1)];
+		mWireless.onReport(b, Reports.WIRELESS_LENGTH, System.nanoTime());
+	}
+
+	//parseWireless() alone, battery and null responses alternating
+	@Benchmark
+	public void wirelessStatus()
+	{
+		mWireless.parseWireless((mNext++ & 1) == 0 ? mBattery : mNull, Reports.WIRELESS_LENGTH);
+	}
+}
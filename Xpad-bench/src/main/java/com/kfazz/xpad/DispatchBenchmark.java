@@ -0,0 +1,84 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Report to listener: onReport() publishes into the pad's event ring and
+//XpadInputBus.drain() hands it to a subscriber, all on one thread so the
+//numbers are the work done, not the handoff.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	static final int FRAME_REPORTS = 4; //a 250Hz pad drained at 60fps
+
+	private final XpadInputBus mBus = new XpadInputBus();
+	private XpadDevice mPad;
+	private ByteBuffer[] mReports;
+	private int mNext = 0;
+	private long mSeen = 0;
+
+	private final XpadInputListener mListener = new XpadInputListener() {
+		@Override
+		public void onXpadMotionEvent(XpadEventMsg msg)
+		{
+			mSeen += msg.getButtons() + msg.getLeftX();
+		}
+	};
+
+	@Setup
+	public void setup()
+	{
+		mPad = Reports.wiredPad();
+		mBus.addDevice(mPad);
+		mBus.subscribe(mListener, XpadInputBus.PLAYERS_ALL, XpadState.BTN_ALL, XpadState.AXIS_ALL);
+		mReports = Reports.wiredSequence();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mBus.removeDevice(mPad);
+		mPad.XpadStop();
+	}
+
+	@Benchmark
+	public long reportToListener()
+	{
+		ByteBuffer b = mReports[mNext++ & (Reports.SEQUENCE - 1)];
+		mPad.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+		mBus.drain();
+		return mSeen;
+	}
+
+	//several reports queued between two frames, drained together
+	@Benchmark
+	@OperationsPerInvocation(FRAME_REPORTS)
+	public long frameDrain()
+	{
+		for (int i = 0; i < FRAME_REPORTS; i++)
+		{
+			ByteBuffer b = mReports[mNext++ & (Reports.SEQUENCE - 1)];
+			mPad.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+		}
+		mBus.drain();
+		return mSeen;
+	}
+}
@@ -0,0 +1,65 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//XpadEventMsg on its own: allocating one, the slot copy the event ring does
+//on publish and poll, and the debug string.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventMsgBenchmark {
+
+	private XpadDevice mPad;
+	private XpadEventMsg mEvent, mCopy;
+
+	@Setup
+	public void setup()
+	{
+		mPad = Reports.wiredPad();
+		XpadLayout layout = XpadLayout.find(0x045e, 0x028e);
+		mEvent = new XpadEventMsg(mPad);
+		mEvent.set(Reports.direct(Reports.wired(0)), layout); //A held, sticks off centre
+		mEvent.changedAxes = XpadState.AXIS_ALL;
+		mCopy = new XpadEventMsg(mPad);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mPad.XpadStop();
+	}
+
+	@Benchmark
+	public XpadEventMsg construct()
+	{
+		return new XpadEventMsg(mPad);
+	}
+
+	@Benchmark
+	public XpadEventMsg copyEvent()
+	{
+		mCopy.copyEvent(mEvent);
+		return mCopy;
+	}
+
+	@Benchmark
+	public String eventToString()
+	{
+		return mEvent.toString();
+	}
+}
@@ -0,0 +1,70 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//XpadMotionDetector with a typical move list, fed a loop of lever motions
+//and presses that completes some of them. Cost is per input change; with
+//-prof gc it should be 0 B/op.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionBenchmark {
+
+	static final int U = XpadState.BTN_D_UP, D = XpadState.BTN_D_DOWN;
+	static final int L = XpadState.BTN_D_LEFT, R = XpadState.BTN_D_RIGHT;
+	static final int P = XpadState.BTN_X, K = XpadState.BTN_A;
+
+	//quarter circle punch, dragon punch, a back charge and a throw
+	static final int[] INPUTS = {
+		D, D | R, R, R | P, 0,
+		R, D, D | R, D | R | P, 0,
+		L, L, R, R | P, 0,
+		P, P | K, 0,
+		D | L, L, U | L, U, 0 };
+	static final int STEP_MS = 16;
+
+	private XpadMotionDetector mDetector;
+	private XpadEventMsg mEvent;
+	private int mNext;
+	private long mTime;
+
+	@Setup
+	public void setup()
+	{
+		mDetector = new XpadMotionDetector(
+				new XpadMotionDetector.Pattern("hadouken").dirs("236").press(P),
+				new XpadMotionDetector.Pattern("shoryuken").dirs("623").press(P),
+				new XpadMotionDetector.Pattern("sonic boom").charge("147", 40).dirAny("369").press(P),
+				new XpadMotionDetector.Pattern("tatsu").dirs("214").press(K),
+				new XpadMotionDetector.Pattern("throw").press(P | K),
+				new XpadMotionDetector.Pattern("super").dirs("236236").press(P));
+		mEvent = new XpadEventMsg(null);
+		mEvent.setPlayer(1);
+	}
+
+	@Benchmark
+	public int inputChange()
+	{
+		mTime += STEP_MS * 1000000L;
+		mEvent.buttons = (short) INPUTS[mNext];
+		mEvent.timestamp = mTime;
+		if (++mNext == INPUTS.length)
+			mNext = 0;
+		mDetector.onXpadMotionEvent(mEvent);
+		return mDetector.takeMotions(1);
+	}
+}
@@ -0,0 +1,79 @@
+package com.kfazz.xpad;
+
+import java.io.File;
+
+//Soak test: replays a capture through the real reader, decoder and bus for a
+//while, looping it, and prints the per-device counters and the latency
+//histograms at the end, and optionally the XpadTrace of the last few seconds.
+//
+//  java -cp target/benchmarks.jar com.kfazz.xpad.ReplaySoak <file.xpcap>
+//      [speed, default 8] [seconds, default 60] [wired|wireless, default wired]
+//      [trace.json]
+public class ReplaySoak {
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 1)
+		{
+			System.err.println("usage: ReplaySoak <file.xpcap> [speed] [seconds] [wired|wireless] [trace.json]");
+			System.exit(2);
+		}
+		File file = new File(args[0]);
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 8;
+		long seconds = args.length > 2 ? Long.parseLong(args[2]) : 60;
+		boolean wireless = args.length > 3 && args[3].equals("wireless");
+		File trace = args.length > 4 ? new File(args[4]) : null;
+		XpadLayout layout = wireless ? XpadLayout.find(0x045e, 0x0719) : XpadLayout.find(0x045e, 0x028e);
+
+		XpadReplayTransport transport = new XpadReplayTransport(file, speed, true);
+		XpadInputBus bus = new XpadInputBus();
+		final long[] events = new long[1];
+		bus.subscribe(new XpadInputListener() {
+			@Override
+			public void onXpadMotionEvent(XpadEventMsg msg)
+			{
+				events[0]++;
+			}
+		}, XpadInputBus.PLAYERS_ALL, XpadState.BTN_ALL, XpadState.AXIS_ALL);
+
+		//one device per captured slot, sharing a reader like a receiver's slots
+		int slots = transport.getSlotCount();
+		XpadDevice[] pads = new XpadDevice[slots];
+		XpadReader reader = new XpadReader(transport, "replay " + file.getName());
+		for (int i = 0; i < slots; i++)
+		{
+			pads[i] = new XpadDevice(null, null, transport, i, layout, i + 1);
+			bus.addDevice(pads[i]);
+			pads[i].XpadStart(reader);
+		}
+		XpadLatency.reset();
+		reader.start();
+
+		long end = System.nanoTime() + seconds * 1000000000L;
+		while (System.nanoTime() < end && !transport.isFinished())
+		{
+			bus.drain(); //a 60fps game
+			Thread.sleep(16);
+		}
+		bus.drain();
+
+		System.out.println("replayed " + transport.getReports() + " reports at " + speed
+				+ "x, " + transport.getLoops() + " loops, " + transport.getOverruns() + " overruns, "
+				+ events[0] + " events delivered");
+		XpadMetrics.Snapshot snapshot = new XpadMetrics.Snapshot();
+		for (XpadDevice pad : pads)
+		{
+			pad.getMetrics(snapshot);
+			System.out.println("pad " + pad.getPlayerNum() + ": " + snapshot);
+			pad.XpadStop();
+		}
+		for (LatencyHistogram h : XpadLatency.STAGES)
+			System.out.println(h);
+		if (trace != null)
+		{
+			XpadTrace.dump(trace);
+			System.out.println("trace in " + trace);
+		}
+		transport.closeReads(); //stops the reader
+	}
+}
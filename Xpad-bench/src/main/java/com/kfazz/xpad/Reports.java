@@ -0,0 +1,112 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.app.Activity;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+
+//Report bytes and started pads for the benchmarks. The reports follow the
+//layouts in XpadLayout byte for byte: a left stick sweep with the triggers
+//ramping and A tapped every 8th report, so no two neighbours are equal and
+//duplicate suppression never hides the decode.
+final class Reports {
+
+	static final int SEQUENCE = 64; //power of two, index with & (SEQUENCE - 1)
+	static final int WIRED_LENGTH = 32;
+	static final int WIRELESS_LENGTH = 29;
+	static final int MAX_PACKET = 32;
+
+	//the 18 bytes after the type and size, shared by both layouts
+	private static byte[] payload(int i)
+	{
+		byte[] p = new byte[18];
+		int buttons = (i & 7) == 0 ? XpadState.BTN_A : 0;
+		p[0] = (byte) buttons; //D-pad, start, back, stick presses
+		p[1] = (byte) (buttons >> 8); //bumpers, guide, A B X Y
+		p[2] = (byte) (i * 4); //LT
+		p[3] = (byte) (255 - i * 4); //RT
+		short lx = (short) (Math.sin(i * 2 * Math.PI / SEQUENCE) * 32767);
+		short ly = (short) (Math.cos(i * 2 * Math.PI / SEQUENCE) * 32767);
+		p[4] = (byte) lx; p[5] = (byte) (lx >> 8);
+		p[6] = (byte) ly; p[7] = (byte) (ly >> 8);
+		p[8] = (byte) 0x80; p[9] = 0x00; //right stick slightly off centre
+		p[10] = 0x7f; p[11] = 0x00;
+		return p;
+	}
+
+	static byte[] wired(int i)
+	{
+		byte[] r = new byte[WIRED_LENGTH];
+		r[0] = 0x00;
+		r[1] = 0x14;
+		System.arraycopy(payload(i), 0, r, 2, 18);
+		return r;
+	}
+
+	static byte[] wireless(int i)
+	{
+		byte[] r = new byte[WIRELESS_LENGTH];
+		byte[] header = { 0x00, 0x01, 0x00, (byte)0xf0, 0x00, 0x13 };
+		System.arraycopy(header, 0, r, 0, header.length);
+		System.arraycopy(payload(i), 0, r, 6, 18);
+		return r;
+	}
+
+	//receiver status messages parseWireless() handles
+	static final byte[] WIRELESS_BATTERY = { 0x00, 0x00, 0x00, 0x13, (byte)0xc0 };
+	static final byte[] WIRELESS_NULL = { 0x00, 0x00, 0x00, (byte)0xf0 };
+
+	//direct little endian buffer, like the ones XpadReader queues
+	static ByteBuffer direct(byte[] bytes)
+	{
+		ByteBuffer b = ByteBuffer.allocateDirect(MAX_PACKET);
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		b.put(bytes);
+		b.clear();
+		return b;
+	}
+
+	static ByteBuffer[] wiredSequence()
+	{
+		ByteBuffer[] seq = new ByteBuffer[SEQUENCE];
+		for (int i = 0; i < SEQUENCE; i++)
+			seq[i] = direct(wired(i));
+		return seq;
+	}
+
+	static ByteBuffer[] wirelessSequence()
+	{
+		ByteBuffer[] seq = new ByteBuffer[SEQUENCE];
+		for (int i = 0; i < SEQUENCE; i++)
+			seq[i] = direct(wireless(i));
+		return seq;
+	}
+
+	//a started pad whose reader is never run, reports are fed by hand
+	static XpadDevice pad(int vendorId, int productId, int playerNum)
+	{
+		XpadLayout layout = XpadLayout.find(vendorId, productId);
+		UsbInterface intf = new UsbInterface(0, new UsbEndpoint(0x81, MAX_PACKET),
+				new UsbEndpoint(0x01, MAX_PACKET));
+		UsbDevice device = new UsbDevice(vendorId, productId, new UsbInterface[] { intf });
+		XpadUsbTransport transport = new XpadUsbTransport(new UsbDeviceConnection());
+		XpadDevice pad = new XpadDevice(new Activity(), device, transport, transport.addSlot(intf),
+				layout, playerNum);
+		pad.XpadStart(new XpadReader(transport, "bench"));
+		return pad;
+	}
+
+	static XpadDevice wiredPad()
+	{
+		return pad(0x045e, 0x028e, 1);
+	}
+
+	static XpadDevice wirelessPad()
+	{
+		return pad(0x045e, 0x0719, 1);
+	}
+}
@@ -0,0 +1,105 @@
+package com.kfazz.xpad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+//The decode path must not allocate per report: onReport() decodes in place
+//into pooled messages, and draining them through the bus reuses those too.
+//Counts the bytes this thread allocates around a batch of reports, so the
+//build fails as soon as something on the path starts allocating again.
+public class DecodeAllocationTest {
+
+	static final int WARMUP = 20000; //lazy setup and the JIT out of the way
+	static final int REPORTS = 10000;
+
+	private com.sun.management.ThreadMXBean mThreads;
+	private XpadDevice mWired, mWireless, mCalibrated;
+	private ByteBuffer[] mWiredReports, mWirelessReports;
+	private XpadInputBus mBus;
+	private long mEvents;
+
+	@Before
+	public void setup()
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		mThreads = (com.sun.management.ThreadMXBean) threads;
+		Assume.assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+		mThreads.setThreadAllocatedMemoryEnabled(true);
+
+		mWired = Reports.wiredPad();
+		mWireless = Reports.wirelessPad();
+		mCalibrated = Reports.wiredPad();
+		XpadCalibration c = new XpadCalibration();
+		c.left.deadzone = c.right.deadzone = 0.2f;
+		c.right.curve = 2;
+		mCalibrated.setCalibration(c);
+		mWiredReports = Reports.wiredSequence();
+		mWirelessReports = Reports.wirelessSequence();
+
+		mBus = new XpadInputBus();
+		mBus.subscribe(new XpadInputListener() {
+			@Override
+			public void onXpadMotionEvent(XpadEventMsg msg)
+			{
+				mEvents++;
+			}
+		}, XpadInputBus.PLAYERS_ALL, XpadState.BTN_ALL, XpadState.AXIS_ALL);
+		mBus.addDevice(mWired);
+		mBus.addDevice(mWireless);
+		mBus.addDevice(mCalibrated);
+	}
+
+	@After
+	public void tearDown()
+	{
+		if (mWired == null)
+			return;
+		mWired.XpadStop();
+		mWireless.XpadStop();
+		mCalibrated.XpadStop();
+	}
+
+	private void feed(int reports)
+	{
+		for (int i = 0; i < reports; i++)
+		{
+			ByteBuffer b = mWiredReports[i & (Reports.SEQUENCE - 1)];
+			mWired.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+			mCalibrated.onReport(b, Reports.WIRED_LENGTH, System.nanoTime());
+			b = mWirelessReports[i & (Reports.SEQUENCE - 1)];
+			mWireless.onReport(b, Reports.WIRELESS_LENGTH, System.nanoTime());
+			if ((i & 7) == 7)
+				mBus.drain(); //a frame's worth
+		}
+		mBus.drain();
+	}
+
+	private long allocated(int reports)
+	{
+		long id = Thread.currentThread().getId();
+		long before = mThreads.getThreadAllocatedBytes(id);
+		feed(reports);
+		return mThreads.getThreadAllocatedBytes(id) - before;
+	}
+
+	@Test
+	public void reportsDoNotAllocate()
+	{
+		feed(WARMUP);
+		long overhead = allocated(0); //the counter itself
+		long events = mEvents;
+		long bytes = allocated(REPORTS) - overhead;
+		assertTrue("reports reached the listener", mEvents > events);
+		assertEquals("bytes allocated decoding and draining " + REPORTS + " reports per pad",
+				0, bytes);
+	}
+}
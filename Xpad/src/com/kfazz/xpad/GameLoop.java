@@ -0,0 +1,111 @@
+package com.kfazz.xpad;
+
+//Fixed timestep driver for a game simulation. Call advance() once per frame:
+//it runs however many whole steps of the clock's elapsed time are due, and
+//carries the remainder to the next frame. The simulation always sees the
+//same dt, so it behaves the same whatever the frame rate or how often
+//controllers report, and two runs fed the same input on the same steps
+//come out the same.
+//
+//Rendering usually falls between two steps, getAlpha() says how far, so the
+//game can draw each object between its previous and current position.
+public class GameLoop {
+
+	//monotonic nanoseconds, swap in a fake one to drive the loop by hand
+	public interface Clock {
+		long nanoTime();
+	}
+
+	public static final Clock SYSTEM_CLOCK = new Clock() {
+		public long nanoTime()
+		{
+			return System.nanoTime();
+		}
+	};
+
+	public interface Simulation {
+		//called before every step, keep what rendering interpolates from
+		void saveState();
+		void step(float dt);
+	}
+
+	private final Clock mClock;
+	private final long mStepNanos;
+	private final float mStepSeconds;
+	private final int mMaxSteps;
+
+	private boolean mStarted = false;
+	private long mLastTime;
+	private long mAccumulator; //elapsed time not yet simulated, < mStepNanos between frames
+	private long mSteps; //steps run, times mStepNanos is the simulated time
+	private long mDropped; //steps skipped because a frame was too late to catch up
+
+	//maxStepsPerFrame bounds the catch up after a stall, past it simulated
+	//time falls behind the clock instead of the frame taking longer still
+	public GameLoop(Clock clock, int stepsPerSecond, int maxStepsPerFrame)
+	{
+		mClock = clock;
+		mStepNanos = 1000000000L / stepsPerSecond;
+		mStepSeconds = 1f / stepsPerSecond;
+		mMaxSteps = maxStepsPerFrame;
+	}
+
+	//runs the steps due since the last call, returns how many. The first call
+	//after construction or reset() only starts the clock.
+	public int advance(Simulation sim)
+	{
+		long now = mClock.nanoTime();
+		if (!mStarted)
+		{
+			mStarted = true;
+			mLastTime = now;
+			return 0;
+		}
+		mAccumulator += Math.max(0, now - mLastTime);
+		mLastTime = now;
+
+		int steps = 0;
+		while (mAccumulator >= mStepNanos)
+		{
+			if (steps == mMaxSteps)
+			{
+				mDropped += mAccumulator / mStepNanos;
+				mAccumulator %= mStepNanos;
+				break;
+			}
+			sim.saveState();
+			sim.step(mStepSeconds);
+			mAccumulator -= mStepNanos;
+			mSteps++;
+			steps++;
+		}
+		return steps;
+	}
+
+	//forget the time since the last advance(), e.g. after the game was
+	//paused, so it isn't caught up on all at once
+	public void reset()
+	{
+		mStarted = false;
+		mAccumulator = 0;
+	}
+
+	//how far between the last two steps the clock is now, 0 - 1
+	public float getAlpha()
+	{
+		if (!mStarted)
+			return 1;
+		long pending = mAccumulator + Math.max(0, mClock.nanoTime() - mLastTime);
+		return Math.min(1f, pending / (float) mStepNanos);
+	}
+
+	public float getStepSeconds(){
+		return mStepSeconds;}
+	//simulated time, advances by one step per step
+	public long getTimeNanos(){
+		return mSteps * mStepNanos;}
+	public long getSteps(){
+		return mSteps;}
+	public long getDroppedSteps(){
+		return mDropped;}
+}
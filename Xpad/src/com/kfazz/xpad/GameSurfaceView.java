@@ -0,0 +1,193 @@
+package com.kfazz.xpad;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+//Runs a GameWorld on a game thread of its own, drawing into a SurfaceView,
+//so frames don't queue behind input dispatch and layout on the UI thread.
+//
+//From Jelly Bean the thread is paced by Choreographer, one frame per vsync,
+//and the world's GameLoop uses the vsync time as its clock so simulation
+//steps line up with the frames actually shown. Older releases fall back to
+//sleeping until the next 60Hz tick.
+//
+//The game thread is the one draining the input bus, so controller events
+//reach it through each device's XpadEventRing, which is built for exactly
+//one reader thread and one draining thread. The UI thread only hands over
+//the surface size and window focus, through volatiles.
+public class GameSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+	private static final String TAG = "GameSurfaceView";
+
+	static final long FRAME_NANOS = 1000000000L / 60; //pacing without Choreographer
+
+	private final GameWorld mWorld;
+	private GameThread mThread; //UI thread only
+
+	//UI thread -> game thread. Width and height share a long so they're
+	//never seen half updated.
+	private volatile long mSize;
+	private volatile boolean mFocused;
+
+	public GameSurfaceView(Context context) {
+		super(context);
+		mWorld = new GameWorld(context.getResources().getDisplayMetrics().density);
+		getHolder().addCallback(this);
+		setFocusable(true);
+	}
+
+	public GameWorld getWorld() {
+		return mWorld;
+	}
+
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		mThread = new GameThread(holder);
+		mThread.start();
+	}
+
+	@Override
+	public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+		mSize = (long) width << 32 | height;
+	}
+
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		//the surface is gone once we return, the thread has to be done with it
+		mThread.quit();
+		mThread = null;
+	}
+
+	@Override
+	public void onWindowFocusChanged(boolean hasWindowFocus) {
+		mFocused = hasWindowFocus;
+		super.onWindowFocusChanged(hasWindowFocus);
+	}
+
+	private class GameThread extends Thread {
+		private final SurfaceHolder mHolder;
+		volatile boolean mRunning = true;
+
+		//everything below is the game thread's own
+		private long mFrameTimeNanos; //clock for the world's GameLoop
+		private long mAppliedSize = 0;
+		private boolean mPaused = true;
+
+		GameThread(SurfaceHolder holder) {
+			super("GameThread");
+			mHolder = holder;
+		}
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+			mFrameTimeNanos = System.nanoTime();
+			mWorld.setClock(new GameLoop.Clock() {
+				public long nanoTime() {
+					return mFrameTimeNanos;
+				}
+			});
+
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+				Looper.prepare();
+				VsyncPacer.start(this);
+				Looper.loop(); //until VsyncPacer sees mRunning go false
+			} else {
+				long next = System.nanoTime();
+				while (mRunning) {
+					doFrame(System.nanoTime());
+					next += FRAME_NANOS;
+					long wait = next - System.nanoTime();
+					if (wait <= 0) {
+						next = System.nanoTime(); //fell behind, don't run a burst of frames
+						continue;
+					}
+					try {
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+					} catch (InterruptedException e) {
+						Log.d(TAG, "Thread Interrupted.");
+					}
+				}
+			}
+			if (!mPaused)
+				mWorld.pause();
+			Log.d(TAG, "Game thread dying.");
+		}
+
+		void doFrame(long frameTimeNanos) {
+			mFrameTimeNanos = frameTimeNanos;
+
+			long size = mSize;
+			if (size != mAppliedSize) {
+				mAppliedSize = size;
+				mWorld.setSize((int) (size >>> 32), (int) size);
+			}
+			boolean paused = !mFocused || size == 0;
+			if (paused != mPaused) {
+				mPaused = paused;
+				if (paused)
+					mWorld.pause();
+				else
+					mWorld.resume();
+			}
+			if (paused)
+				return;
+
+			mWorld.frame();
+
+			Canvas canvas = mHolder.lockCanvas();
+			if (canvas != null) {
+				try {
+					canvas.drawColor(Color.BLACK);
+					mWorld.draw(canvas);
+				} finally {
+					mHolder.unlockCanvasAndPost(canvas);
+				}
+			}
+		}
+
+		//UI thread, returns once the thread stopped touching the surface
+		void quit() {
+			mRunning = false;
+			boolean retry = true;
+			while (retry) {
+				try {
+					join();
+					retry = false;
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	//Choreographer is API 16, it's kept out of GameThread so that class still
+	//loads on older releases
+	private static final class VsyncPacer implements Choreographer.FrameCallback {
+		private final GameThread mThread;
+
+		private VsyncPacer(GameThread thread) {
+			mThread = thread;
+		}
+
+		static void start(GameThread thread) {
+			Choreographer.getInstance().postFrameCallback(new VsyncPacer(thread));
+		}
+
+		public void doFrame(long frameTimeNanos) {
+			if (!mThread.mRunning) {
+				Looper.myLooper().quit();
+				return;
+			}
+			mThread.doFrame(frameTimeNanos);
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+	}
+}
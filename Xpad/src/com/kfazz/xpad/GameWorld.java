@@ -0,0 +1,1030 @@
+package com.kfazz.xpad;
+
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Paint.Style;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A trivial joystick based physics game to demonstrate joystick handling.
+ * Everything but the drawing surface: a GameView or GameSurfaceView calls
+ * frame() and draw() from one thread, which is also the thread that drains
+ * the input bus, and nothing here is touched from any other.
+ *
+ * @see GameControllerInput
+ */
+public class GameWorld implements XpadInputListener {
+	private static int gameMode;  /* Game mode variable.
+								 * 0: stationary rock shooting
+								 * 1: asteroid field avoidance
+								 * 2: DRIFTMANIA!
+								 */
+	
+	private int[][] colors = 	// Colors for players
+								   {{255, 63, 255, 63},
+									{255, 0, 91, 255},  //light blue
+									{255, 255, 165, 0}, //orange
+									{255, 173, 255, 7}, //yellow green
+									{255, 255, 0, 0}};  //red
+	
+	//the simulation runs at a fixed rate whatever the frame and report rates
+	private final int STEPS_PER_SECOND = 60;
+	private final int MAX_STEPS_PER_FRAME = 5; //past this a stalled game slows down
+	private final int MAX_OBSTACLES = 12;
+
+	private final int MAX_PLAYERS = 6;//really 5, playerid is indexed starting at 1
+	//need to seperate player id and controller id, use max of
+	// 4 actual players regardless of how the controllrs enumerate.
+
+	private final long FIRE_DELAY = 100; //time between firings
+	private final int HIT_RUMBLE_MS = 50; //rumble length when a bullet hits
+	private final float AIM_THRESHOLD = 0.3f; //right stick deflection that fires
+	private final long HITCH_MS = 100; //a frame this late dumps the trace, see XpadTrace.hitch()
+	private final long HITCH_DUMP_LAPSE_MS = 30000;
+
+	//a: player, b: buttons
+	static final int TRACE_INPUT = XpadTrace.event("game input");
+	//a: ms since the previous frame. Spans drain, input and step.
+	static final int TRACE_FRAME = XpadTrace.event("game frame");
+	static final int TRACE_DRAW = XpadTrace.event("game draw");
+
+	//20% circular deadzone on the movement stick, the aim stick has its own
+	//threshold. MainActivity gives this to every pad.
+	public static XpadCalibration calibration() {
+		XpadCalibration c = new XpadCalibration();
+		c.left.deadzone = 0.2f;
+		return c;
+	}
+
+	//what the pads do, see bindings()
+	static final int ACTION_UP = 0;
+	static final int ACTION_DOWN = 1;
+	static final int ACTION_LEFT = 2;
+	static final int ACTION_RIGHT = 3;
+	static final int ACTION_FIRE = 4;
+	static final int ACTION_MODE = 5;
+	private static final int MOVE_ACTIONS = 1 << ACTION_UP | 1 << ACTION_DOWN | 1 << ACTION_LEFT | 1 << ACTION_RIGHT;
+
+	//d-pad moves, A or the right trigger fires, back changes game mode. The
+	//left stick and right stick aim stay analog.
+	public static XpadActionProfile bindings() {
+		return new XpadActionProfile("default")
+				.bindButton(ACTION_UP, XpadState.BTN_D_UP)
+				.bindButton(ACTION_DOWN, XpadState.BTN_D_DOWN)
+				.bindButton(ACTION_LEFT, XpadState.BTN_D_LEFT)
+				.bindButton(ACTION_RIGHT, XpadState.BTN_D_RIGHT)
+				.bindButton(ACTION_FIRE, XpadState.BTN_A)
+				.bindAxis(ACTION_FIRE, XpadState.AXIS_RT, 0.5f)
+				.bindButton(ACTION_MODE, XpadState.BTN_BACK);
+	}
+
+	private final long M2_TRAVEL_SPEED = 120; //asteroid field travel speed ;-)
+	private final float DECELLERATION_FACTOR = -.007f; //should be negative
+	private final float REL_SPEED_FACTOR = .5f;
+	
+	private final Random mRandom;
+	//Support multiple players
+	private Ship[] mShips;
+	//keep their scores
+	private Long[] mScores;
+
+	//don't allocate in draw(), it runs every frame
+	private Paint scorePaint;
+
+	private final List<Bullet> mBullets;
+
+	//controller events are drained from here each frame
+	private volatile XpadInputBus mInputBus;
+	//recorded input played back alongside (or instead of) the pads
+	private volatile XpadInputPlayer mInputPlayer;
+	//pad events -> ACTION_*, per player
+	private final XpadActionMap mActions = new XpadActionMap(bindings());
+	
+	//if there's time subclass these into different types ie: enemies
+	//give them a move() method or something
+	private final List<Obstacle> mObstacles;
+	//broadphase for the obstacles, kept current as they move. Cells are
+	//sized in the constructor so the biggest obstacle's reach fits one.
+	private final SpatialGrid<Obstacle> mObstacleGrid;
+
+	//System.nanoTime() stamps of the oldest controller report not yet
+	//simulated / drawn, for XpadLatency. 0 when there is none.
+	private long mStepInputTime;
+	private long mDrawInputTime;
+
+	private GameLoop mLoop = new GameLoop(GameLoop.SYSTEM_CLOCK, STEPS_PER_SECOND, MAX_STEPS_PER_FRAME);
+	//where between the last two steps draw() is drawing, see Sprite.drawX()
+	private float mDrawAlpha = 1;
+	private long mLastFrameTime;
+
+	private final GameLoop.Simulation mSimulation = new GameLoop.Simulation() {
+		public void saveState() {
+			for (int i = 1; i < MAX_PLAYERS; i++)
+				if (mShips[i] != null)
+					mShips[i].savePosition();
+			for (int i = 0; i < mBullets.size(); i++)
+				mBullets.get(i).savePosition();
+			for (int i = 0; i < mObstacles.size(); i++)
+				mObstacles.get(i).savePosition();
+		}
+
+		public void step(float dt) {
+			GameWorld.this.step(dt);
+		}
+	};
+	private float mShipSize;
+	private float mMaxShipThrust;
+	private float mMaxShipSpeed;
+	private float mBulletSize;
+	private float mBulletSpeed;
+
+	private float mMinObstacleSize;
+	private float mMaxObstacleSize;
+	private float mMinObstacleSpeed;
+	private float mMaxObstacleSpeed;
+	
+	int highScorePlayer;
+	long highScore;
+	
+
+	//playfield size in pixels
+	private int mWidth;
+	private int mHeight;
+
+	//density is pixels per dip, DisplayMetrics.density
+	public GameWorld(float density) {
+
+		mRandom = new Random();
+
+		mShips = new Ship[MAX_PLAYERS];
+		mScores = new Long[MAX_PLAYERS];
+		scorePaint = new Paint();
+
+		mBullets = new ArrayList<Bullet>();
+		mObstacles = new ArrayList<Obstacle>();
+		
+		gameMode = 0;
+		highScorePlayer = 0;
+		highScore = 0;
+
+		//base size is 5 "Density independent Pixels" 
+		//a DIP is defined as 1 for a 160dpi display
+		float baseSize = density * 5f;
+		float baseSpeed = baseSize * 3;
+
+		mShipSize = baseSize * 3;
+		mMaxShipThrust = baseSpeed * 0.4f;
+		mMaxShipSpeed = baseSpeed * 14;
+
+		mBulletSize = baseSize;
+		mBulletSpeed = baseSpeed * 16 * 2;
+
+		mMinObstacleSize = baseSize * 2;
+		mMaxObstacleSize = baseSize * 12;
+		mMinObstacleSpeed = baseSpeed;
+		mMaxObstacleSpeed = baseSpeed * 3;
+
+		mObstacleGrid = new SpatialGrid<Obstacle>(
+				obstacleReach(mMaxObstacleSize) * 2, MAX_OBSTACLES * 8);
+	}
+
+	//hosts may call this again with the same size, e.g. GameSurfaceView
+	//for every new surface, that leaves the game alone
+	public void setSize(int w, int h) {
+		if (w == mWidth && h == mHeight)
+			return;
+		mWidth = w;
+		mHeight = h;
+
+		// Reset the game when the view changes size.
+		reset();
+	}
+
+
+	private void reset() {
+		for (int i = 0; i < MAX_PLAYERS; i++) {
+			mShips[i]=null;
+			if (mScores[i]!=null)
+				mScores[i] = (long) 0;
+		}
+		highScorePlayer = 0;
+		highScore = 0;
+		mBullets.clear();
+		mObstacles.clear();
+		mObstacleGrid.clear();
+	}
+
+	//bus frame() drains, listeners (us included) are called from inside the
+	//drain. May be set from any thread.
+	public void setInputBus(XpadInputBus bus) {
+		mInputBus = bus;
+	}
+
+	//plays an XpadInputRecorder log into onXpadMotionEvent() in real time,
+	//null to stop
+	public void setInputPlayer(XpadInputPlayer player) {
+		mInputPlayer = player;
+	}
+
+	//clock the simulation runs on, GameLoop.SYSTEM_CLOCK unless replaced to
+	//drive the game by hand
+	public void setClock(GameLoop.Clock clock) {
+		mLoop = new GameLoop(clock, STEPS_PER_SECOND, MAX_STEPS_PER_FRAME);
+	}
+
+	//to give a player their own bindings
+	public XpadActionMap getActionMap() {
+		return mActions;
+	}
+
+	private void drainXpads() {
+		XpadInputBus bus = mInputBus;
+		if (bus != null)
+			bus.drain();
+		XpadInputPlayer player = mInputPlayer;
+		if (player != null)
+			player.play(this, System.nanoTime());
+	}
+
+	//msg is only valid for the duration of the call. Steering and firing
+	//happen once a frame in applyInput(), from the actions msg resolves to.
+	@Override
+	public  void onXpadMotionEvent(XpadEventMsg msg)
+	{
+		int id = msg.get_id();
+		XpadTrace.instant(TRACE_INPUT, id, msg.getButtons());
+
+		if (id <= 0 || id >= MAX_PLAYERS)
+			return;
+		if(mShips[id] == null) {
+			Log.d("GameWorld", "Adding new Ship for player:" + id);
+			mShips[id]= new Ship();
+			mScores[id]= Long.valueOf(0);
+		}
+
+		mShips[id].pad = msg.getDevice(); //msg is reused, keep what we need from it
+		mShips[id].playerId = id;
+		mActions.onXpadMotionEvent(msg);
+
+		//oldest input the next step and draw will be the first to reflect
+		if (mStepInputTime == 0)
+			mStepInputTime = msg.getTimestamp();
+	}
+
+	private void applyInput() {
+		mActions.frame();
+
+		int numPlayers = 0;
+		for (int i = 1; i< MAX_PLAYERS; i++)
+			if (mShips[i] !=null)
+				numPlayers++;
+		long delaymod = FIRE_DELAY * numPlayers;
+		boolean changeMode = false;
+
+		for (int id = 1; id < MAX_PLAYERS; id++) {
+			Ship ship = mShips[id];
+			if (ship == null)
+				continue;
+
+			int dx = (mActions.isDown(id, ACTION_RIGHT) ? 1 : 0) - (mActions.isDown(id, ACTION_LEFT) ? 1 : 0);
+			int dy = (mActions.isDown(id, ACTION_DOWN) ? 1 : 0) - (mActions.isDown(id, ACTION_UP) ? 1 : 0);
+			XpadState pad = mActions.getState(id);
+			if ((mActions.getActions(id) & MOVE_ACTIONS) != 0)//Dpad is pressed, ignore joystick
+				ship.setHeading(dx, dy);
+			else //deadzone is already applied, see calibration()
+				ship.setHeading(pad.getLeftStickX(), -pad.getLeftStickY()); // y axis is inverted
+
+			//a tap during the cooldown still fires once it's over
+			if (mActions.wasPressed(id, ACTION_FIRE))
+				ship.firePending = true;
+
+			long now = mLoop.getTimeNanos() / 1000000; //simulated, so replays fire the same
+			long elapsedTime = now - ship.lastFire;
+			if (elapsedTime > delaymod && !ship.isDestroyed()) {
+				float rx = pad.getRightStickX();
+				float ry = -pad.getRightStickY();
+
+				//fire ahead, repeating while held
+				if (ship.firePending || mActions.isDown(id, ACTION_FIRE)) {
+					mBullets.add(new Bullet(ship, mBulletSpeed));
+					ship.lastFire = now;
+					ship.firePending = false;
+				}
+				//or keep firing where the right stick points
+				else if (rx * rx + ry * ry > AIM_THRESHOLD * AIM_THRESHOLD) {
+					mBullets.add(new Bullet(ship, (float)Math.atan2(ry, rx), mBulletSpeed));
+					ship.lastFire = now;
+				}
+			}
+
+			if (mActions.wasPressed(id, ACTION_MODE))
+				changeMode = true;
+		}
+
+		//after the loop, everyone's input for this step is already applied
+		if (changeMode) {
+			if(gameMode >= 2)
+				gameMode = 0;
+			else
+				gameMode++;
+
+			reset();
+		}
+	}
+
+	//the host stopped calling frame(), e.g. lost window focus
+	public void pause() {
+		mLastFrameTime = 0; //a paused game isn't a hitch
+
+		int numShips = MAX_PLAYERS;
+		for (int i = 0; i< numShips; i++)
+		{
+			if (mShips[i] != null) {
+				mShips[i].setHeading(0, 0);
+				mShips[i].setVelocity(0, 0);
+			}
+		}
+	}
+
+	public void resume() {
+		mLoop.reset(); //don't catch up on the time we were away
+	}
+
+	//drain input, apply it and run the simulation steps due, once per frame
+	public void frame() {
+		long frameTime = SystemClock.uptimeMillis();
+		long sinceLast = mLastFrameTime != 0 ? frameTime - mLastFrameTime : 0;
+		mLastFrameTime = frameTime;
+		XpadTrace.begin(TRACE_FRAME, sinceLast, 0);
+		if (sinceLast > HITCH_MS)
+			XpadTrace.hitch("frame after " + sinceLast + "ms", HITCH_DUMP_LAPSE_MS);
+
+		drainXpads();
+		applyInput();
+
+		mLoop.advance(mSimulation);
+		XpadTrace.end(TRACE_FRAME);
+	}
+
+	//one fixed step of the simulation, only ever called by mLoop
+	private void step(float tau) {
+		if (mStepInputTime != 0) {
+			long now = System.nanoTime();
+			XpadLatency.STEP.record(now - mStepInputTime);
+			if (mDrawInputTime == 0)
+				mDrawInputTime = mStepInputTime;
+			mStepInputTime = 0;
+		}
+
+		// Move the ship(s).
+		int numShips = MAX_PLAYERS;
+		for (int i = 1; i< numShips; i++)
+		{
+			if (mShips[i]!=null) {
+				mShips[i].accelerate(tau, mMaxShipThrust, mMaxShipSpeed);
+				if (!mShips[i].step(tau)) {
+					mShips[i] = new Ship(); 
+				}
+			}
+		}
+
+		// Move the bullets.
+		int numBullets = mBullets.size();
+		for (int i = 0; i < mBullets.size(); i++) {
+			if (i < mBullets.size())
+			{
+				final Bullet bullet = mBullets.get(i);
+				if (!bullet.step(tau)) {
+					mBullets.remove(i);
+					i -= 1;
+					numBullets -= 1;
+				}
+			}
+		}
+
+		// Move obstacles.
+		int numObstacles = mObstacles.size();
+		for (int i = 0; i < numObstacles; i++) {
+			final Obstacle obstacle = mObstacles.get(i);
+			if (!obstacle.step(tau)) {
+				mObstacleGrid.remove(obstacle.mGridHandle);
+				mObstacles.remove(i);
+				i -= 1;
+				numObstacles -= 1;
+			} else {
+				mObstacleGrid.update(obstacle.mGridHandle, obstacle.mPositionX, obstacle.mPositionY);
+			}
+		}
+
+		// Check for collisions between bullets and obstacles, only against
+		// the obstacles the grid finds near each bullet.
+		for (int i = 0; i < numBullets; i++) {
+			final Bullet bullet = mBullets.get(i);
+			int near = mObstacleGrid.query(bullet.mPositionX, bullet.mPositionY, bullet.mSize);
+			for (int j = 0; j < near; j++) {
+				final Obstacle obstacle = mObstacleGrid.getResult(j);
+				if (bullet.collidesWith(obstacle)) {
+					if(mScores[bullet.getId()]!=null)//bullets persist after a player dies
+						mScores[bullet.getId()]+=10;// 10 points
+					
+					//FIXME if rumble_enabled...
+					if (mShips[bullet.getId()] != null && mShips[bullet.getId()].pad != null)
+						mShips[bullet.getId()].pad.rumbleEffect(127, (int)obstacle.mSize,
+								HIT_RUMBLE_MS, 0, HIT_RUMBLE_MS / 2, 0);
+					
+					bullet.destroy();
+					obstacle.destroy();
+					break;
+				}
+			}
+		}
+
+		// Check for collisions between the ship and obstacles.
+		for (int j = 1; j< numShips; j++) 
+		{
+			if (mShips[j]==null)
+				continue;
+			int near = mObstacleGrid.query(mShips[j].mPositionX, mShips[j].mPositionY, mShips[j].mSize);
+			for (int i = 0; i < near; i++) {
+				final Obstacle obstacle = mObstacleGrid.getResult(i);
+				if (mShips[j].collidesWith(obstacle)) {
+					mScores[j]=null;
+					mShips[j].destroy();
+					for (Bullet b : mBullets)
+					{
+						if (b.getId()==j)
+							b.destroy();
+					}
+					mShips[j]=null;
+					obstacle.destroy();
+					break;
+				}
+			}
+		}
+
+		// Spawn more obstacles offscreen when needed.
+		// Avoid putting them right on top of the ship.
+		int obstacleCap = MAX_OBSTACLES;  //TODO: This is very ghetto
+		if(gameMode == 1)
+			obstacleCap = (MAX_OBSTACLES * 2);
+		
+		OuterLoop: while (mObstacles.size() < obstacleCap) {
+			final float minDistance = mShipSize * 4;
+			float size = mRandom.nextFloat() * (mMaxObstacleSize - mMinObstacleSize)
+					+ mMinObstacleSize;
+			float positionX, positionY;
+			int tries = 0;
+			do {
+				int edge;
+				if (gameMode == 1)
+					edge = 3;
+				else
+					edge = mRandom.nextInt(4);
+				switch (edge) {
+				case 0:
+					positionX = -size;
+					positionY = mRandom.nextInt(mHeight);
+					break;
+				case 1:
+					positionX = mWidth + size;
+					positionY = mRandom.nextInt(mHeight);
+					break;
+				case 2:
+					positionX = mRandom.nextInt(mWidth);
+					positionY = -size;
+					break;
+				default:
+					positionX = mRandom.nextInt(mWidth);
+					positionY = mHeight + size;
+					break;
+				}
+				if (++tries > 10) {
+					break OuterLoop;
+				}
+				//FIXME this restricts them from spawning near the center, need to
+				//change to minDistance away from each active ship.
+			} while (pythag(positionX - 0, positionY - 0) < minDistance);
+
+			float direction = mRandom.nextFloat() * (float) Math.PI * 2;
+			float speed = mRandom.nextFloat() * (mMaxObstacleSpeed - mMinObstacleSpeed)
+					+ mMinObstacleSpeed;
+			
+
+				
+			float velocityX = (float) Math.cos(direction) * speed;
+			float velocityY = (float) Math.sin(direction) * speed;
+
+			Obstacle obstacle;
+			if(gameMode == 2) 
+				obstacle = new Enemy();
+			else
+				obstacle = new Obstacle();
+			
+			obstacle.setPosition(positionX, positionY);
+			obstacle.setSize(size);
+			obstacle.setVelocity(velocityX, velocityY);
+			obstacle.mGridHandle = mObstacleGrid.add(obstacle, positionX, positionY, obstacleReach(size));
+			mObstacles.add(obstacle);
+		}
+	}
+
+	public void draw(Canvas canvas) {
+		mDrawAlpha = mLoop.getAlpha();
+		XpadTrace.begin(TRACE_DRAW, 0, 0);
+
+		if (mDrawInputTime != 0) {
+			XpadLatency.DRAW.record(System.nanoTime() - mDrawInputTime);
+			mDrawInputTime = 0;
+		}
+
+		// Draw the ship(s).
+		int numShips = MAX_PLAYERS;
+		for (int i = 0; i < numShips; i++){
+			if (mShips[i] != null) {
+				mShips[i].draw(canvas);
+			}
+		}
+
+		// Draw bullets.
+		int numBullets = mBullets.size();
+		for (int i = 0; i < numBullets; i++) {
+			final Bullet bullet = mBullets.get(i);
+			bullet.draw(canvas);
+		}
+
+		// Draw obstacles.
+		int numObstacles = mObstacles.size();
+		for (int i = 0; i < numObstacles; i++) {
+			final Obstacle obstacle = mObstacles.get(i);
+			obstacle.draw(canvas);
+		}
+
+		
+		//Draw the scores last, so they're on top
+		int playercount = 0;
+		for (int i = 0; i < numShips; i++){
+			if (mScores[i]!=null) 
+			{	
+				
+				scorePaint.setARGB(colors[i][0], colors[i][1], colors[i][2], colors[i][3]);
+				scorePaint.setTextSize(20);
+				canvas.drawText("Player " + i + "Score :" + mScores[i], 10, 25*i, scorePaint);
+				if(mScores[i] > highScore){
+					highScorePlayer = i;
+					highScore = mScores[i];
+				}
+				playercount++;
+			}
+		}
+		if(highScorePlayer != 0){
+			scorePaint.setARGB(colors[highScorePlayer][0], colors[highScorePlayer][1], colors[highScorePlayer][2], colors[highScorePlayer][3]);
+			canvas.drawText("Top: P" + highScorePlayer + ": " + highScore, 10, (playercount + 2) * 25, scorePaint);
+		}
+		//draw game mode for debugging
+		scorePaint.setColor(Color.GREEN);
+		scorePaint.setTextSize(20);
+		canvas.drawText("Mode: " + GameWorld.gameMode , canvas.getWidth() - 100, 25, scorePaint);
+		XpadTrace.end(TRACE_DRAW);
+	}
+
+	//grid radius for an obstacle of this size: queried with the other
+	//sprite's size it covers Sprite.collidesWith() and Enemy's square
+	static float obstacleReach(float size) {
+		return size * 1.5f;
+	}
+
+	static float pythag(float x, float y) {
+		return (float) Math.sqrt(x * x + y * y);
+	}
+
+	static int blend(float alpha, int from, int to) {
+		return from + (int) ((to - from) * alpha);
+	}
+
+	static void setPaintARGBBlend(Paint paint, float alpha,
+			int a1, int r1, int g1, int b1,
+			int a2, int r2, int g2, int b2) {
+			paint.setARGB(blend(alpha, a1, a2), blend(alpha, r1, r2),
+			blend(alpha, g1, g2), blend(alpha, b1, b2));
+	}
+
+	private abstract class Sprite {
+		protected float mPositionX;
+		protected float mPositionY;
+		protected float mPrevX; //position before the last step, to draw in between
+		protected float mPrevY;
+		protected float mVelocityX;
+		protected float mVelocityY;
+		protected float mSize;
+		protected boolean mDestroyed;
+		protected float mDestroyAnimProgress;
+
+		public void setPosition(float x, float y) {
+			mPositionX = mPrevX = x;
+			mPositionY = mPrevY = y;
+		}
+
+		public void savePosition() {
+			mPrevX = mPositionX;
+			mPrevY = mPositionY;
+		}
+
+		//where to draw, between the last two steps
+		protected float drawX() {
+			return mPrevX + (mPositionX - mPrevX) * mDrawAlpha;
+		}
+
+		protected float drawY() {
+			return mPrevY + (mPositionY - mPrevY) * mDrawAlpha;
+		}
+
+		public void setVelocity(float x, float y) {
+			mVelocityX = x;
+			mVelocityY = y;
+		}
+
+		public void setSize(float size) {
+			mSize = size;
+		}
+
+		public float distanceTo(float x, float y) {
+			return pythag(mPositionX - x, mPositionY - y);
+		}
+
+		public float distanceTo(Sprite other) {
+			return distanceTo(other.mPositionX, other.mPositionY);
+		}
+
+		//squared, saves the sqrt where only comparing
+		public float distanceSquaredTo(float x, float y) {
+			float dx = mPositionX - x, dy = mPositionY - y;
+			return dx * dx + dy * dy;
+		}
+
+		public boolean collidesWith(Sprite other) {
+			// Really bad collision detection.
+			if (mDestroyed || other.mDestroyed)
+				return false;
+			float reach = Math.max(mSize, other.mSize) + Math.min(mSize, other.mSize) * 0.5f;
+			return distanceSquaredTo(other.mPositionX, other.mPositionY) <= reach * reach;
+		}
+
+		public boolean isDestroyed() {
+			return mDestroyed;
+		}
+		
+		
+
+		public boolean step(float tau) {
+			float yOffset = 0;
+			if(gameMode == 1)
+				yOffset = M2_TRAVEL_SPEED;
+			
+			mPositionX += mVelocityX * tau;
+			mPositionY += (mVelocityY + yOffset) * tau;
+
+			if (mDestroyed) {
+				mDestroyAnimProgress += tau / getDestroyAnimDuration();
+				if (mDestroyAnimProgress >= 1.0f) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public abstract void draw(Canvas canvas);
+
+		public abstract float getDestroyAnimDuration();
+
+		protected boolean isOutsidePlayfield() {
+			final int width = mWidth;
+			final int height = mHeight;
+			return mPositionX < 0 || mPositionX >= width
+					|| mPositionY < 0 || mPositionY >= height;
+		}
+
+		//the previous position moves along so drawing doesn't sweep across the screen
+		protected void wrapAtPlayfieldBoundary() {
+			final int width = mWidth;
+			final int height = mHeight;
+			while (mPositionX <= -mSize) {
+				mPositionX += width + mSize * 2;
+				mPrevX += width + mSize * 2;
+			}
+			while (mPositionX >= width + mSize) {
+				mPositionX -= width + mSize * 2;
+				mPrevX -= width + mSize * 2;
+			}
+			while (mPositionY <= -mSize) {
+				mPositionY += height + mSize * 2;
+				mPrevY += height + mSize * 2;
+			}
+			while (mPositionY >= height + mSize) {
+				mPositionY -= height + mSize * 2;
+				mPrevY -= height + mSize * 2;
+			}
+		}
+
+		public void destroy() {
+			mDestroyed = true;
+			step(0);
+		}
+	}
+
+	private class Ship extends Sprite {
+		private static final float CORNER_ANGLE = (float) Math.PI * 2 / 3;
+		private static final float TO_DEGREES = (float) (180.0 / Math.PI);
+
+		private float mHeadingX;
+		private float mHeadingY;
+		private float mHeadingAngle;
+		private float mHeadingMagnitude;
+		private final Paint mPaint;
+		private final Path mPath;
+		
+		
+		public XpadDevice pad; //controller driving this ship, for rumble
+		public int playerId;
+		public long lastFire; //simulated ms
+		public boolean firePending; //pressed fire during the cooldown
+
+		public Ship() {
+			
+			mPaint = new Paint();
+			mPaint.setStyle(Style.FILL);
+
+			setPosition(mWidth * 0.5f, mHeight * 0.5f);
+			setVelocity(0, 0);
+			setSize(mShipSize);
+
+			mPath = new Path();
+			mPath.moveTo(0, 0);
+			mPath.lineTo((float)Math.cos(-CORNER_ANGLE) * mSize,
+					(float)Math.sin(-CORNER_ANGLE) * mSize);
+			mPath.lineTo(mSize, 0);
+			mPath.lineTo((float)Math.cos(CORNER_ANGLE) * mSize,
+					(float)Math.sin(CORNER_ANGLE) * mSize);
+			mPath.lineTo(0, 0);
+			
+			lastFire = Long.MIN_VALUE / 2; //never, the first shot is always allowed
+		}
+
+		public void setHeadingX(float x) {
+			mHeadingX = x;
+			updateHeading();
+		}
+
+		public void setHeadingY(float y) {
+			mHeadingY = y;
+			updateHeading();
+		}
+
+		public void setHeading(float x, float y) {
+			mHeadingX = x;
+			mHeadingY = y;
+			updateHeading();
+		}
+
+		private void updateHeading() {
+			mHeadingMagnitude = pythag(mHeadingX, mHeadingY);
+			if (mHeadingMagnitude > 0.1f) {
+				mHeadingAngle = (float) Math.atan2(mHeadingY, mHeadingX);
+			}
+		}
+
+		public void accelerate(float tau, float maxThrust, float maxSpeed) {
+			float thrust = mHeadingMagnitude * maxThrust;
+			if(mHeadingMagnitude > 0){
+				mVelocityX += Math.cos(mHeadingAngle) * thrust;
+				mVelocityY += Math.sin(mHeadingAngle) * thrust;
+			}
+			else{
+				mVelocityX += mVelocityX * DECELLERATION_FACTOR;
+				mVelocityY += mVelocityY * DECELLERATION_FACTOR;
+			}
+
+			final float speed = pythag(mVelocityX, mVelocityY);
+			if (speed > maxSpeed) {
+				final float scale = maxSpeed / speed;
+				mVelocityX = mVelocityX * scale;
+				mVelocityY = mVelocityY * scale;
+			}
+		}
+
+		@Override
+		public boolean step(float tau) {
+			if (!super.step(tau)) {
+				return false;
+			}
+
+			wrapAtPlayfieldBoundary();
+			return true;
+		}
+
+		public void draw(Canvas canvas) {
+			int mPlayerId = playerId;
+			setPaintARGBBlend(mPaint, mDestroyAnimProgress,
+					colors[mPlayerId][0], colors[mPlayerId][1], colors[mPlayerId][2], colors[mPlayerId][3],
+					0, 100, 0, 0);
+
+			canvas.save(Canvas.MATRIX_SAVE_FLAG);
+			canvas.translate(drawX(), drawY());
+			canvas.rotate(mHeadingAngle * TO_DEGREES);
+			canvas.drawPath(mPath, mPaint);
+			canvas.restore();
+		}
+
+		@Override
+		public float getDestroyAnimDuration() {
+			return 1.0f;
+		}
+	}
+
+	//modified to track player ID for scorekeeping
+	private class Bullet extends Sprite {
+		private final Paint mPaint;
+		//player id of the shooter
+		private final int mPlayerId;
+
+		@SuppressWarnings("unused")
+		//this will be sued in the future by AI fired bullets
+		public Bullet() {
+			mPaint = new Paint();
+			mPaint.setStyle(Style.FILL);
+			setSize(mBulletSize);
+			mPlayerId = 0;
+		}
+		
+		public Bullet(Ship origin, float velocity){ //convenience for a button
+			this(origin, origin.mHeadingAngle, velocity);
+		}
+
+		public Bullet(Ship origin, float angle, float velocity) {
+			mPaint = new Paint();
+			mPaint.setStyle(Style.FILL);
+			mPlayerId = origin.playerId; // this is an issue otherwise could be sprite
+											  // just have to check type of sprite here
+			
+			float xPos = (float) (origin.mPositionX + Math.cos(angle)* origin.mSize);
+			float yPos = (float) (origin.mPositionY + Math.sin(angle) * origin.mSize);
+			setPosition(xPos,yPos);
+			
+			float xSpeed = (float) (REL_SPEED_FACTOR * origin.mVelocityX + Math.cos(angle) * velocity);
+			float ySpeed = (float) (REL_SPEED_FACTOR * origin.mVelocityY + Math.sin(angle) * velocity);
+			setVelocity(xSpeed,ySpeed);
+			
+			setSize(mBulletSize);
+		}
+
+		public final int getId(){
+			return mPlayerId;
+		}
+
+		@Override
+		public boolean step(float tau) {
+			if (!super.step(tau)) {
+				return false;
+			}
+			return !isOutsidePlayfield();
+		}
+
+		public void draw(Canvas canvas) {
+			setPaintARGBBlend(mPaint, mDestroyAnimProgress,
+					colors[mPlayerId][0], colors[mPlayerId][1], colors[mPlayerId][2], colors[mPlayerId][3],
+					0, 255, 255, 255);
+			
+			/*
+			setPaintARGBBlend(mPaint, mDestroyAnimProgress,
+					255, 255, 255, (255/(mPlayerId+1)),
+					0, 255, 255, 255);*/ //white bullets
+			canvas.drawCircle(drawX(), drawY(), mSize, mPaint);
+		}
+
+		@Override
+		public float getDestroyAnimDuration() {
+			return 0.125f;
+		}
+	}
+
+	private class Obstacle extends Sprite {
+		protected final Paint mPaint;
+		int mGridHandle; //in mObstacleGrid
+
+		public Obstacle() {
+			mPaint = new Paint();
+			mPaint.setARGB(255, 127, 127, 255);
+			mPaint.setStyle(Style.FILL);
+		}
+
+		@Override
+		public boolean step(float tau) {
+			if (!super.step(tau)) {
+				return false;
+			}
+			wrapAtPlayfieldBoundary();
+			return true;
+		}
+
+		public void draw(Canvas canvas) {
+			setPaintARGBBlend(mPaint, mDestroyAnimProgress,
+					255, 127, 127, 255,
+					0, 255, 0, 0);
+			canvas.drawCircle(drawX(), drawY(),
+					mSize * (1.0f - mDestroyAnimProgress), mPaint);
+		}
+
+		@Override
+		public float getDestroyAnimDuration() {
+			return 0.25f;
+		}
+	}
+
+	private class Enemy extends Obstacle
+	{
+		protected final Paint mPaint; //overrides parents, 
+									  //final per instantiated class?
+		public Enemy() {
+		mPaint = new Paint();
+		mPaint.setARGB(255, 127, 255, 127);
+		mPaint.setStyle(Style.FILL_AND_STROKE);
+	}
+		@Override
+		public boolean step(float tau) {
+			//FIXME seek nearest player
+			//min 
+
+			float dist = 800 * 800; //TODO pick a better number :) squared
+			int target = 0;
+			for (int i = 1; i < MAX_PLAYERS; i++)
+			{
+				if (mShips[i]!=null)
+				{
+					float sdist = distanceSquaredTo(mShips[i].mPositionX, mShips[i].mPositionY);
+					if (sdist<dist) //target in range?
+					{
+						dist = sdist;
+						target = i;
+					}
+				}
+			}
+			
+			//if target !=0 twiddle the velocity
+			if (target !=0)
+			{
+				double darct = Math.atan2(mShips[target].mPositionY - mPositionY,mShips[target].mPositionX - mPositionX);
+				
+					mVelocityX = (float) ( Math.cos(darct) * mBulletSpeed /4); //FIXME
+					mVelocityY = (float) ( Math.sin(darct) * mBulletSpeed /4);
+			}
+			if (!super.step(tau)) {
+				return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public void draw (Canvas canvas)
+		{
+			setPaintARGBBlend(mPaint, mDestroyAnimProgress,
+					255, 127, 255, 127,
+					0, 255, 0, 0);
+			float x = drawX(), y = drawY();
+			canvas.drawRect(x-mSize, y-mSize,
+					x+mSize, y+mSize,mPaint);
+		}
+		
+		public boolean collidesWith(Sprite other) {
+			// Really bad collision detection.
+			float enemyRadius = other.mSize * 0.5f;
+			
+			return other.mPositionX <= mPositionX+mSize  && other.mPositionX >= mPositionX-mSize &&
+					other.mPositionY <= mPositionY+mSize && other.mPositionY <= mPositionY+mSize ;
+			
+
+		}
+	}
+}
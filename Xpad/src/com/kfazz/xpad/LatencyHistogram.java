@@ -0,0 +1,108 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Fixed memory latency histogram. Values are nanoseconds, bucketed by power of
+//two with SUB_BUCKETS linear steps inside each power, so the relative error of
+//a reported percentile is at most 1/SUB_BUCKETS. Recording is lock free and
+//allocation free and may happen from several threads at once.
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 2;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int NUM_BUCKETS = 64 * SUB_BUCKETS;
+
+	private final String mName;
+	private final AtomicLongArray mCounts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLongArray mTotals = new AtomicLongArray(3); //count, sum, max
+	private static final int COUNT = 0, SUM = 1, MAX = 2;
+
+	public LatencyHistogram(String name)
+	{
+		mName = name;
+	}
+
+	public String getName()
+	{
+		return mName;
+	}
+
+	static int bucketOf(long v)
+	{
+		if (v < SUB_BUCKETS)
+			return (int) Math.max(0, v);
+		int log = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (log - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (log - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	//largest value that lands in bucket b
+	static long bucketLimit(int b)
+	{
+		if (b < SUB_BUCKETS)
+			return b;
+		int log = b / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = b % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (log - SUB_BITS)) - 1;
+	}
+
+	public void record(long nanos)
+	{
+		if (nanos < 0)
+			nanos = 0;
+		mCounts.incrementAndGet(bucketOf(nanos));
+		mTotals.incrementAndGet(COUNT);
+		mTotals.addAndGet(SUM, nanos);
+		long max;
+		while (nanos > (max = mTotals.get(MAX)) && !mTotals.compareAndSet(MAX, max, nanos))
+			;
+	}
+
+	public void reset()
+	{
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			mCounts.set(i, 0);
+		for (int i = 0; i < 3; i++)
+			mTotals.set(i, 0);
+	}
+
+	public long getCount(){
+		return mTotals.get(COUNT);}
+	public long getMax(){
+		return mTotals.get(MAX);}
+	public long getMean(){
+		long n = mTotals.get(COUNT);
+		return n == 0 ? 0 : mTotals.get(SUM) / n;}
+
+	//upper bound of the bucket holding the p'th percentile (0-100), 0 if empty
+	public long getPercentile(double p)
+	{
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			total += mCounts.get(i);
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(total * p / 100.0);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++)
+		{
+			seen += mCounts.get(i);
+			if (seen >= rank)
+				return Math.min(bucketLimit(i), getMax());
+		}
+		return getMax();
+	}
+
+	//one line summary in microseconds
+	public String toString()
+	{
+		return mName + ": n=" + getCount()
+				+ " mean=" + getMean() / 1000 + "us"
+				+ " p50=" + getPercentile(50) / 1000 + "us"
+				+ " p90=" + getPercentile(90) / 1000 + "us"
+				+ " p99=" + getPercentile(99) / 1000 + "us"
+				+ " max=" + getMax() / 1000 + "us";
+	}
+}
@@ -1,8 +1,8 @@
 package com.kfazz.xpad;
 import java.util.ArrayList;
+import java.util.Iterator;
 
 import com.kfazz.xpad.R;
-import com.kfazz.xpad.GameView;
 
 import android.app.Activity;
 import android.content.BroadcastReceiver;
@@ -15,6 +15,7 @@ import android.hardware.usb.UsbInterface;
 import android.hardware.usb.UsbManager;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
 
 //Main Activity analogous to driver class in java prjoect
 public class MainActivity extends Activity {
@@ -24,16 +25,42 @@ public class MainActivity extends Activity {
 	private UsbManager mManager;
 	private ArrayList<XpadDevice> mXpadDevices = new ArrayList<XpadDevice>(); //Handle more than one controler
 
-	private GameView mGame;
+	//draw from a game thread on a SurfaceView rather than on the UI thread
+	private static final boolean SURFACE_RENDERING = true;
+	//debug: record every pad's reports to <external files>/<name>.xpcap, for
+	//XpadReplayTransport and the bench's ReplaySoak
+	private static final boolean CAPTURE_INPUT = false;
+
+	private View mGameView;
+	private GameWorld mGame;
+
+	//controller events go from the devices through here to the game
+	private XpadInputBus mInputBus = new XpadInputBus();
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		Log.d(TAG, "onCreate()");
 
-		//show GameView
-		setContentView(R.layout.game_view);
-		mGame = (GameView) findViewById(R.id.game);
+		//show the game
+		if (SURFACE_RENDERING) {
+			GameSurfaceView view = new GameSurfaceView(this);
+			setContentView(view);
+			mGameView = view;
+			mGame = view.getWorld();
+		} else {
+			setContentView(R.layout.game_view);
+			GameView view = (GameView) findViewById(R.id.game);
+			mGameView = view;
+			mGame = view.getWorld();
+		}
+		mGame.setInputBus(mInputBus);
+		mInputBus.subscribe(mGame, XpadInputBus.PLAYERS_ALL, XpadState.BTN_ALL, XpadState.AXIS_ALL);
+
+		//long frames dump the last few seconds of XpadTrace here
+		XpadTrace.setDirectory(getExternalFilesDir(null));
+		if (CAPTURE_INPUT) //before any pad's reader starts
+			XpadCaptureTransport.setDirectory(getExternalFilesDir(null));
 
 		// get handle to system usb manager
 		mManager = (UsbManager)getSystemService(Context.USB_SERVICE);
@@ -55,7 +82,7 @@ public class MainActivity extends Activity {
 	@Override
 	public void onWindowFocusChanged(boolean hasFocus) {
 		super.onWindowFocusChanged(hasFocus);
-		mGame.requestFocus();
+		mGameView.requestFocus();
 	}
 
 	@Override
@@ -70,24 +97,44 @@ public class MainActivity extends Activity {
 		if (UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(action)) {
 			probeXpad(device);
 		} else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
-			for(XpadDevice d : mXpadDevices)
-				if (d.mDevice.equals(device)) {
-					d.XpadStop();
-				}
+			removeXpads(device);
 		}	     
 	}
 
+	//stops every controller on a detached device and forgets about them
+	private void removeXpads(UsbDevice device) {
+		Iterator<XpadDevice> it = mXpadDevices.iterator();
+		while (it.hasNext()) {
+			XpadDevice d = it.next();
+			if (d.mDevice.equals(device)) {
+				d.XpadStop();
+				mInputBus.removeDevice(d);
+				it.remove();
+			}
+		}
+	}
+
+	//one past the highest player number in use, so numbers aren't reused
+	//by a new pad while an older one keeps its own after a detach
+	private int nextPlayerNum() {
+		int num = 0;
+		for (XpadDevice d : mXpadDevices)
+			num = Math.max(num, d.getPlayerNum());
+		return num + 1;
+	}
+
 	@Override
 	public void onDestroy() {
 		Log.d(TAG, "onDestroy()");
 		unregisterReceiver(mUsbReceiver);
 		for( XpadDevice pad : mXpadDevices)
 			pad.XpadStop();//kill all pads
+		XpadLatency.dump(); //input latency per stage for this session
 		super.onDestroy();
 	}
 
 	// Sets the current USB device and interface
-	private boolean addXpad(UsbDevice device, UsbInterface intf, boolean isWireless) {
+	private boolean addXpad(UsbDevice device, UsbInterface intf, XpadLayout layout) {
 
 		if (!mManager.hasPermission(device))
 		{
@@ -99,7 +146,9 @@ public class MainActivity extends Activity {
 		if (connection != null) {
 			if (connection.claimInterface(intf, true)) //true here kicks out the kernel driver
 			{
-				mXpadDevices.add( new XpadDevice(this, device, connection, intf, isWireless, mXpadDevices.size()+1));
+				mXpadDevices.add( new XpadDevice(this, device, connection, intf, layout, nextPlayerNum()));
+				mXpadDevices.get(mXpadDevices.size()-1).setCalibration(GameWorld.calibration());
+				mInputBus.addDevice(mXpadDevices.get(mXpadDevices.size()-1));
 				mXpadDevices.get(mXpadDevices.size()-1).XpadStart(); //setup controller instance
 				return true;
 			} else {
@@ -114,6 +163,36 @@ public class MainActivity extends Activity {
 
 	}
 
+	// Opens a wireless receiver once and starts all of its controller slots
+	private boolean addDongle(UsbDevice device, XpadLayout layout) {
+
+		if (!mManager.hasPermission(device))
+		{
+			Log.d(TAG, "Permission Denied for device:" + device);
+			return false;
+		}
+
+		UsbDeviceConnection connection = mManager.openDevice(device);
+		if (connection == null) {
+			Log.d(TAG, "Open failed for device: " + device.getDeviceName());
+			return false;
+		}
+
+		XpadDongle dongle = new XpadDongle(this, device, connection, layout, nextPlayerNum());
+		if (dongle.getSlots().isEmpty()) {
+			connection.close();
+			return false;
+		}
+		mXpadDevices.addAll(dongle.getSlots());
+		for (XpadDevice slot : dongle.getSlots())
+		{
+			slot.setCalibration(GameWorld.calibration());
+			mInputBus.addDevice(slot);
+		}
+		dongle.XpadStart(); //one reader thread for every slot
+		return true;
+	}
+
 	private boolean probeXpad(UsbDevice device) {
 		Log.d(TAG, "in probeXpad. Device: " + device);
 		for (XpadDevice d : mXpadDevices)
@@ -123,7 +202,7 @@ public class MainActivity extends Activity {
 				return false;
 			}
 		}
-		//switch based on IDs in device_filter.xml
+		//look up the IDs from device_filter.xml in XpadLayout.TABLE
 		//wireless dongles support 4 interfaces, one per controller
 
 		/*Wired Controller:
@@ -141,37 +220,17 @@ public class MainActivity extends Activity {
   			Endpoint 7(in/out): Controller 4
 		 */
 
-		switch (device.getVendorId())
-		{
-		case 0x045e: //vendor: Microsoft
-			switch (device.getProductId())
-			{
-			case 0x028e: //wired controller
-			{
-				if (addXpad(device, device.getInterface(0), false))
-					Log.d(TAG, "added Xpad "+ device.getDeviceName());
-
-				return true;
-			}
-			case 0x0291: //wireless dongle
-			case 0x0791: //360 wireless dongle
-			{
-				addXpad(device, device.getInterface(0), true);//Controller 	1
-				addXpad(device, device.getInterface(2), true);//			2
-				addXpad(device, device.getInterface(4), true);//			3
-				addXpad(device, device.getInterface(6), true);//			4
-				return true;
-			}
-			default: 
-				return false;
-			}
-		case 0x0f0d: //Hori Fighting stick EX2
-			if (device.getProductId()==0x0016)
-				addXpad(device, device.getInterface(0), false);
-			return true;
-		default:
+		XpadLayout layout = XpadLayout.find(device.getVendorId(), device.getProductId());
+		if (layout == null)
 			return false;
+
+		if (layout.wireless) {
+			if (addDongle(device, layout)) //Controllers 1-4 on interfaces 0, 2, 4, 6
+				Log.d(TAG, "added Xpad dongle "+ layout.name + " " + device.getDeviceName());
 		}
+		else if (addXpad(device, device.getInterface(layout.interfaces[0]), layout))
+			Log.d(TAG, "added Xpad "+ layout.name + " " + device.getDeviceName());
+		return true;
 	}
 
 	BroadcastReceiver mUsbReceiver = new BroadcastReceiver() {
@@ -184,10 +243,7 @@ public class MainActivity extends Activity {
 			}
 			else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
 				UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
-				for(XpadDevice d : mXpadDevices)
-					if (d.mDevice.equals(device)) {
-						d.XpadStop();
-					}
+				removeXpads(device);
 			}
 		}
 	};
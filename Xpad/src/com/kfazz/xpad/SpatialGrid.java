@@ -0,0 +1,234 @@
+package com.kfazz.xpad;
+
+//Uniform grid spatial hash for the collision broadphase. Entries are circles
+//(position and radius) filed under the grid cell their centre is in. Cells
+//are hashed into a fixed table of buckets, so the grid has no bounds and
+//things off the edge of the playfield work like anything else.
+//
+//Keep the handle add() returns and call update() after every move: the entry
+//is only relinked when it changes cell, so keeping the grid current costs a
+//couple of multiplies per entry per step. query() then walks only the cells
+//within reach and returns the entries whose circles overlap the query's, by
+//squared distance, no sqrt. Pick the cell size around the largest entry's
+//diameter so a query touches a few cells, and collision cost grows with the
+//number of entries rather than the number of pairs.
+//
+//Nothing is allocated once the arrays have grown to the largest number of
+//entries seen. Not thread safe.
+public class SpatialGrid<T> {
+
+	private static final int NONE = -1;
+
+	private final float mInvCell;
+	private final int[] mHead; //bucket -> first entry, NONE if empty
+	private final int mMask;
+
+	//per entry handle
+	private Object[] mItems = new Object[16];
+	private float[] mX = new float[16], mY = new float[16], mR = new float[16];
+	private int[] mBucket = new int[16]; //NONE while the handle is free
+	private int[] mNext = new int[16], mPrev = new int[16]; //bucket list, mNext also links free handles
+	private int[] mStamp = new int[16]; //last query that returned it
+
+	private int mFree = NONE;
+	private int mUsed = 0; //handles ever handed out
+	private int mCount = 0;
+	private float mMaxRadius = 0;
+
+	private int[] mResults = new int[16];
+	private int mQuery = 0;
+
+	//buckets is rounded up to a power of two, a few times the number of
+	//occupied cells keeps the lists short
+	public SpatialGrid(float cellSize, int buckets)
+	{
+		mInvCell = 1f / cellSize;
+		int size = Integer.highestOneBit(Math.max(2, buckets) - 1) << 1;
+		mHead = new int[size];
+		mMask = size - 1;
+		for (int i = 0; i < size; i++)
+			mHead[i] = NONE;
+	}
+
+	public int size()
+	{
+		return mCount;
+	}
+
+	//returns the entry's handle
+	public int add(T item, float x, float y, float radius)
+	{
+		int h;
+		if (mFree != NONE)
+		{
+			h = mFree;
+			mFree = mNext[h];
+		}
+		else
+		{
+			if (mUsed == mItems.length)
+				grow();
+			h = mUsed++;
+		}
+		mItems[h] = item;
+		mX[h] = x;
+		mY[h] = y;
+		mR[h] = radius;
+		if (radius > mMaxRadius)
+			mMaxRadius = radius;
+		link(h, bucketOf(x, y));
+		mCount++;
+		return h;
+	}
+
+	public void update(int h, float x, float y)
+	{
+		mX[h] = x;
+		mY[h] = y;
+		int b = bucketOf(x, y);
+		if (b != mBucket[h])
+		{
+			unlink(h);
+			link(h, b);
+		}
+	}
+
+	public void remove(int h)
+	{
+		unlink(h);
+		mBucket[h] = NONE;
+		mItems[h] = null;
+		mNext[h] = mFree;
+		mFree = h;
+		mCount--;
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < mHead.length; i++)
+			mHead[i] = NONE;
+		for (int h = 0; h < mUsed; h++)
+			mItems[h] = null;
+		mUsed = 0;
+		mFree = NONE;
+		mCount = 0;
+		mMaxRadius = 0;
+	}
+
+	//finds the entries whose circles overlap a circle at x, y, returns how
+	//many. Fetch them with getResult(0 .. n - 1), valid until the next query.
+	public int query(float x, float y, float radius)
+	{
+		int n = 0;
+		int stamp = ++mQuery;
+		float reach = radius + mMaxRadius;
+		int cx0 = cell(x - reach), cx1 = cell(x + reach);
+		int cy0 = cell(y - reach), cy1 = cell(y + reach);
+
+		if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) >= mHead.length)
+		{
+			//reaches past more cells than there are buckets, just test everything
+			for (int h = 0; h < mUsed; h++)
+				if (mBucket[h] != NONE && overlaps(h, x, y, radius))
+					mResults[n++] = h;
+			return n;
+		}
+
+		for (int cy = cy0; cy <= cy1; cy++)
+		{
+			for (int cx = cx0; cx <= cx1; cx++)
+			{
+				for (int h = mHead[hash(cx, cy)]; h != NONE; h = mNext[h])
+				{
+					//buckets are shared between cells, don't return anything twice
+					if (mStamp[h] == stamp)
+						continue;
+					mStamp[h] = stamp;
+					if (overlaps(h, x, y, radius))
+						mResults[n++] = h;
+				}
+			}
+		}
+		return n;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T getResult(int i)
+	{
+		return (T) mItems[mResults[i]];
+	}
+
+	private boolean overlaps(int h, float x, float y, float radius)
+	{
+		float dx = mX[h] - x, dy = mY[h] - y, r = mR[h] + radius;
+		return dx * dx + dy * dy <= r * r;
+	}
+
+	private int cell(float v)
+	{
+		//floor, Math.floor is a lot slower on older Dalvik
+		float f = v * mInvCell;
+		int i = (int) f;
+		return f < i ? i - 1 : i;
+	}
+
+	private int hash(int cx, int cy)
+	{
+		return (cx * 73856093 ^ cy * 19349663) & mMask;
+	}
+
+	private int bucketOf(float x, float y)
+	{
+		return hash(cell(x), cell(y));
+	}
+
+	private void link(int h, int b)
+	{
+		mBucket[h] = b;
+		mPrev[h] = NONE;
+		mNext[h] = mHead[b];
+		if (mHead[b] != NONE)
+			mPrev[mHead[b]] = h;
+		mHead[b] = h;
+	}
+
+	private void unlink(int h)
+	{
+		if (mPrev[h] != NONE)
+			mNext[mPrev[h]] = mNext[h];
+		else
+			mHead[mBucket[h]] = mNext[h];
+		if (mNext[h] != NONE)
+			mPrev[mNext[h]] = mPrev[h];
+	}
+
+	private void grow()
+	{
+		int n = mItems.length * 2;
+		Object[] items = new Object[n];
+		System.arraycopy(mItems, 0, items, 0, mUsed);
+		mItems = items;
+		mX = grow(mX, n);
+		mY = grow(mY, n);
+		mR = grow(mR, n);
+		mBucket = grow(mBucket, n);
+		mNext = grow(mNext, n);
+		mPrev = grow(mPrev, n);
+		mStamp = grow(mStamp, n);
+		mResults = new int[n];
+	}
+
+	private static float[] grow(float[] a, int n)
+	{
+		float[] b = new float[n];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static int[] grow(int[] a, int n)
+	{
+		int[] b = new int[n];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+}
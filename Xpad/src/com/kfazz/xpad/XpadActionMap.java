@@ -0,0 +1,99 @@
+package com.kfazz.xpad;
+
+//Turns controller events into game actions per player, through a compiled
+//XpadActionProfile. Subscribe it to an XpadInputBus (or feed it events from
+//your own listener), then once per frame, after draining, call frame() and
+//ask isDown()/wasPressed()/wasReleased(). Every event costs one profile
+//resolve, a frame a few operations per player, and neither allocates.
+//
+//A press and release between two frames still shows as down for one frame,
+//so taps are never lost to a slow frame.
+//
+//Profiles may be set from any thread and apply from the player's next event
+//(held actions keep the old meaning until then), all other calls belong on
+//the thread draining the bus.
+public class XpadActionMap implements XpadInputListener {
+
+	public static final int MAX_PLAYERS = 32; //player ids, as XpadInputBus.player()
+
+	//copy on write like XpadInputBus, one per player, null for the default
+	private volatile XpadActionProfile.Compiled[] mProfiles = new XpadActionProfile.Compiled[MAX_PLAYERS];
+	private volatile XpadActionProfile.Compiled mDefault;
+
+	private final XpadState[] mStates = new XpadState[MAX_PLAYERS]; //latest state per player
+	private final int[] mHeld = new int[MAX_PLAYERS]; //actions in the latest event
+	private final int[] mSeen = new int[MAX_PLAYERS]; //held at any point since frame()
+	private final int[] mActive = new int[MAX_PLAYERS]; //as of the last frame()
+	private final int[] mPrevious = new int[MAX_PLAYERS]; //as of the frame() before
+
+	public XpadActionMap(XpadActionProfile defaults)
+	{
+		for (int i = 0; i < MAX_PLAYERS; i++)
+			mStates[i] = new XpadState();
+		setDefaultProfile(defaults);
+	}
+
+	//used for every player without a profile of their own
+	public synchronized void setDefaultProfile(XpadActionProfile profile)
+	{
+		mDefault = profile.compile();
+	}
+
+	//null goes back to the default
+	public synchronized void setProfile(int player, XpadActionProfile profile)
+	{
+		XpadActionProfile.Compiled[] profiles = mProfiles.clone();
+		profiles[player] = profile != null ? profile.compile() : null;
+		mProfiles = profiles;
+	}
+
+	//name of the profile a player is using
+	public String getProfileName(int player)
+	{
+		return profileOf(player).name;
+	}
+
+	private XpadActionProfile.Compiled profileOf(int player)
+	{
+		XpadActionProfile.Compiled c = mProfiles[player];
+		return c != null ? c : mDefault;
+	}
+
+	@Override
+	public void onXpadMotionEvent(XpadEventMsg msg)
+	{
+		int p = msg.get_id();
+		if (p < 0 || p >= MAX_PLAYERS)
+			return;
+		mStates[p].copyFrom(msg);
+		int held = profileOf(p).resolve(msg);
+		mHeld[p] = held;
+		mSeen[p] |= held;
+	}
+
+	//latches the actions seen since the last call, once per frame
+	public void frame()
+	{
+		for (int p = 0; p < MAX_PLAYERS; p++)
+		{
+			mPrevious[p] = mActive[p];
+			mActive[p] = mSeen[p];
+			mSeen[p] = mHeld[p];
+		}
+	}
+
+	//bitmask of the player's active actions, bit n for action n
+	public int getActions(int player){
+		return mActive[player];}
+	public boolean isDown(int player, int action){
+		return (mActive[player] & (1 << action)) != 0;}
+	public boolean wasPressed(int player, int action){
+		return (mActive[player] & ~mPrevious[player] & (1 << action)) != 0;}
+	public boolean wasReleased(int player, int action){
+		return (~mActive[player] & mPrevious[player] & (1 << action)) != 0;}
+
+	//the player's latest controller state, for the analog side of things.
+	//Valid until the next drain.
+	public XpadState getState(int player){
+		return mStates[player];}
+}
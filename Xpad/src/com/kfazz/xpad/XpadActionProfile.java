@@ -0,0 +1,237 @@
+package com.kfazz.xpad;
+
+import java.util.ArrayList;
+
+//Which controls trigger which game action, so games test actions instead of
+//buttons and remapping is a matter of handing XpadActionMap another profile.
+//Actions are numbers 0 - 31 picked by the game. An action can have any
+//number of bindings and is active while any of them is:
+//  bindButton(FIRE, BTN_A | BTN_RB)     A or RB
+//  bindChord(SPECIAL, BTN_LB | BTN_A)   LB and A together
+//  bindAxis(FIRE, AXIS_RT, 0.5f)        right trigger at least half way
+//  bindAxis(LEFT, AXIS_LX, -0.5f)       left stick at least half way left
+//
+//Profiles are compiled once (see Compiled), changing one after handing it to
+//an XpadActionMap does nothing until it is set again.
+public class XpadActionProfile {
+
+	public static final int MAX_ACTIONS = 32;
+	public static final int MAX_AXIS_THRESHOLDS = 16;
+
+	private static final class Binding {
+		final int action, buttons, axis;
+		final float threshold;
+
+		Binding(int action, int buttons, int axis, float threshold)
+		{
+			this.action = action;
+			this.buttons = buttons;
+			this.axis = axis;
+			this.threshold = threshold;
+		}
+	}
+
+	private final String mName;
+	private final ArrayList<Binding> mBindings = new ArrayList<Binding>();
+
+	public XpadActionProfile(String name)
+	{
+		mName = name;
+	}
+
+	//copy of another profile, to start a player's own from the default
+	public XpadActionProfile(String name, XpadActionProfile o)
+	{
+		mName = name;
+		mBindings.addAll(o.mBindings);
+	}
+
+	public String getName()
+	{
+		return mName;
+	}
+
+	//active while any of the XpadState.BTN_* buttons is down
+	public XpadActionProfile bindButton(int action, int buttons)
+	{
+		for (int bit = 0; bit < 16; bit++)
+			if ((buttons & (1 << bit)) != 0)
+				add(new Binding(action, 1 << bit, 0, 0));
+		return this;
+	}
+
+	//active while all of the buttons are down. A chord hides the bindings
+	//that share its buttons while it is held, so binding LB+A does not also
+	//fire whatever A alone is bound to.
+	public XpadActionProfile bindChord(int action, int buttons)
+	{
+		if ((buttons & XpadState.BTN_ALL) == 0)
+			throw new IllegalArgumentException("empty chord");
+		add(new Binding(action, buttons & XpadState.BTN_ALL, 0, 0));
+		return this;
+	}
+
+	//active while one XpadState.AXIS_* is past threshold: above it when
+	//positive, below it when negative. Sticks read -1 - 1, positive right and
+	//up, triggers 0 - 1, both after calibration.
+	public XpadActionProfile bindAxis(int action, int axis, float threshold)
+	{
+		return bindChord(action, 0, axis, threshold);
+	}
+
+	//buttons held with an axis past threshold, e.g. LB with the stick down
+	public XpadActionProfile bindChord(int action, int buttons, int axis, float threshold)
+	{
+		if (Integer.bitCount(axis) != 1 || (axis & XpadState.AXIS_ALL) == 0)
+			throw new IllegalArgumentException("bad axis " + axis);
+		if (threshold == 0 || Math.abs(threshold) > 1)
+			throw new IllegalArgumentException("threshold out of range " + threshold);
+		if (threshold < 0 && isTrigger(axis))
+			throw new IllegalArgumentException("triggers have no negative side");
+		add(new Binding(action, buttons & XpadState.BTN_ALL, axis, threshold));
+		return this;
+	}
+
+	//drops every binding of an action
+	public XpadActionProfile unbind(int action)
+	{
+		for (int i = mBindings.size() - 1; i >= 0; i--)
+			if (mBindings.get(i).action == action)
+				mBindings.remove(i);
+		return this;
+	}
+
+	private void add(Binding b)
+	{
+		if (b.action < 0 || b.action >= MAX_ACTIONS)
+			throw new IllegalArgumentException("action out of range " + b.action);
+		mBindings.add(b);
+	}
+
+	private static boolean isTrigger(int axis)
+	{
+		return axis == XpadState.AXIS_LT || axis == XpadState.AXIS_RT;
+	}
+
+	Compiled compile()
+	{
+		return new Compiled(this);
+	}
+
+	//The profile as bitmask tables. Every axis threshold gets a bit above the
+	//16 button bits, so resolving a state is: build one 32 bit word from the
+	//buttons and threshold compares, then one AND and compare per binding.
+	//Bindings are sorted largest first so a held chord can mark its buttons
+	//used before the smaller bindings sharing them are tested.
+	static final class Compiled {
+		final String name;
+		final int[] axis; //per threshold bit, XpadState.AXIS_*
+		final int[] limit; //value * sign must reach this, raw units
+		final int[] sign; //1 for above, -1 for below
+		final int[] mask; //per binding, bits of the word that must all be set
+		final int[] action; //per binding, action bit
+		final boolean[] chord; //per binding, hides bindings sharing its bits
+
+		Compiled(XpadActionProfile p)
+		{
+			name = p.mName;
+			ArrayList<Binding> bindings = p.mBindings;
+			int n = bindings.size();
+
+			int[] ax = new int[MAX_AXIS_THRESHOLDS];
+			int[] lim = new int[MAX_AXIS_THRESHOLDS];
+			int[] sg = new int[MAX_AXIS_THRESHOLDS];
+			int thresholds = 0;
+
+			int[] m = new int[n];
+			int[] a = new int[n];
+			for (int i = 0; i < n; i++)
+			{
+				Binding b = bindings.get(i);
+				int word = b.buttons;
+				if (b.axis != 0)
+				{
+					int full = isTrigger(b.axis) ? 255 : 32767;
+					int l = Math.max(1, Math.round(Math.abs(b.threshold) * full));
+					int s = b.threshold < 0 ? -1 : 1;
+					int k = 0;
+					while (k < thresholds && !(ax[k] == b.axis && lim[k] == l && sg[k] == s))
+						k++;
+					if (k == thresholds)
+					{
+						if (thresholds == MAX_AXIS_THRESHOLDS)
+							throw new IllegalArgumentException("more than " + MAX_AXIS_THRESHOLDS
+									+ " axis thresholds in " + p.mName);
+						ax[k] = b.axis;
+						lim[k] = l;
+						sg[k] = s;
+						thresholds++;
+					}
+					word |= 1 << (16 + k);
+				}
+				m[i] = word;
+				a[i] = 1 << b.action;
+			}
+
+			axis = new int[thresholds];
+			limit = new int[thresholds];
+			sign = new int[thresholds];
+			System.arraycopy(ax, 0, axis, 0, thresholds);
+			System.arraycopy(lim, 0, limit, 0, thresholds);
+			System.arraycopy(sg, 0, sign, 0, thresholds);
+
+			//insertion sort by bit count, descending, stable so equal sized
+			//bindings keep the order they were added in
+			for (int i = 1; i < n; i++)
+			{
+				int mi = m[i], ai = a[i], j = i;
+				while (j > 0 && Integer.bitCount(m[j - 1]) < Integer.bitCount(mi))
+				{
+					m[j] = m[j - 1];
+					a[j] = a[j - 1];
+					j--;
+				}
+				m[j] = mi;
+				a[j] = ai;
+			}
+			mask = m;
+			action = a;
+			chord = new boolean[n];
+			for (int i = 0; i < n; i++)
+				chord[i] = Integer.bitCount(m[i]) > 1;
+		}
+
+		//action bits active in s
+		int resolve(XpadState s)
+		{
+			int word = s.buttons & 0xFFFF;
+			for (int k = 0; k < axis.length; k++)
+			{
+				int v;
+				switch (axis[k]) {
+				case XpadState.AXIS_LT: v = s.lt & 0xFF; break;
+				case XpadState.AXIS_RT: v = s.rt & 0xFF; break;
+				case XpadState.AXIS_LX: v = s.lx; break;
+				case XpadState.AXIS_LY: v = s.ly; break;
+				case XpadState.AXIS_RX: v = s.rx; break;
+				default: v = s.ry; break;
+				}
+				if (v * sign[k] >= limit[k])
+					word |= 1 << (16 + k);
+			}
+
+			int actions = 0, used = 0;
+			for (int i = 0; i < mask.length; i++)
+			{
+				int m = mask[i];
+				if ((word & m) == m && (used & m) == 0)
+				{
+					actions |= action[i];
+					if (chord[i])
+						used |= m;
+				}
+			}
+			return actions;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.kfazz.xpad;
+
+//Stick and trigger calibration for one controller: rest position, range,
+//deadzones and response curve. Fill one in and hand it to
+//XpadDevice.setCalibration(), which compiles it into lookup tables that the
+//reader thread applies to every report before the event is published, so
+//games get sticks ready to use from XpadState.getLeftStickX() and friends,
+//and a stick resting inside its deadzone stops producing events at all.
+//
+//Compiled, a stick costs two table loads per axis, plus one more and two
+//multiplies for a radial deadzone. Everything is fixed point: the raw axis
+//is looked up in AXIS_SIZE steps, and the result is stored back in the
+//event's short as -32767..32767 (Q15).
+public class XpadCalibration {
+
+	public static final int DEADZONE_RADIAL = 0; //on the stick's distance from center
+	public static final int DEADZONE_AXIAL = 1; //on each axis on its own
+
+	public static class Stick {
+		public int centerX = 0, centerY = 0; //raw reading at rest
+		public int rangeX = 32767, rangeY = 32767; //raw distance from center to full deflection
+		public int deadzoneMode = DEADZONE_RADIAL;
+		public float deadzone = 0; //deflection below this reads as 0, 0 - 1
+		public float saturation = 1; //deflection above this reads as full
+		public float curve = 1; //response exponent, 1 linear, > 1 finer near center
+	}
+
+	public static class Trigger {
+		public float deadzone = 0;
+		public float curve = 1;
+	}
+
+	public final Stick left = new Stick();
+	public final Stick right = new Stick();
+	public final Trigger leftTrigger = new Trigger();
+	public final Trigger rightTrigger = new Trigger();
+
+	//raw axis lookups are 65536 / AXIS_SIZE raw units wide
+	static final int AXIS_BITS = 12;
+	static final int AXIS_SIZE = 1 << AXIS_BITS;
+	static final int AXIS_SHIFT = 16 - AXIS_BITS;
+	//radial scale is looked up by x*x + y*y (< 2^31) in RADIAL_SIZE steps
+	static final int RADIAL_SHIFT = 19;
+	static final int RADIAL_SIZE = 1 << (31 - RADIAL_SHIFT);
+	static final int SCALE_ONE = 1 << 14; //radial scale is Q14
+
+	//response for a deflection d (0 - 1) after deadzone and saturation
+	static double response(double d, double deadzone, double saturation, double curve)
+	{
+		if (saturation <= deadzone)
+			saturation = deadzone + 0.01;
+		double t = (d - deadzone) / (saturation - deadzone);
+		if (t <= 0)
+			return 0;
+		if (t >= 1)
+			return 1;
+		return Math.pow(t, curve);
+	}
+
+	//everything the reader thread needs, built once by setCalibration()
+	static final class Compiled {
+		final short[] lx, ly, rx, ry; //raw >> AXIS_SHIFT -> Q15
+		final short[] leftScale, rightScale; //null for axial
+		final byte[] lt, rt; //raw -> raw
+
+		Compiled(XpadCalibration c)
+		{
+			boolean leftRadial = c.left.deadzoneMode == DEADZONE_RADIAL;
+			boolean rightRadial = c.right.deadzoneMode == DEADZONE_RADIAL;
+			lx = axis(c.left, c.left.centerX, c.left.rangeX, !leftRadial);
+			ly = axis(c.left, c.left.centerY, c.left.rangeY, !leftRadial);
+			rx = axis(c.right, c.right.centerX, c.right.rangeX, !rightRadial);
+			ry = axis(c.right, c.right.centerY, c.right.rangeY, !rightRadial);
+			leftScale = leftRadial ? radial(c.left) : null;
+			rightScale = rightRadial ? radial(c.right) : null;
+			lt = trigger(c.leftTrigger);
+			rt = trigger(c.rightTrigger);
+		}
+
+		//normalised axis, with the deadzone and curve when they're per axis
+		private static short[] axis(Stick s, int center, int range, boolean axial)
+		{
+			short[] t = new short[AXIS_SIZE];
+			for (int i = 0; i < AXIS_SIZE; i++)
+			{
+				int raw = (i << AXIS_SHIFT) - 32768;
+				double n = (raw - center) / (double) Math.max(1, range);
+				n = Math.max(-1, Math.min(1, n));
+				if (axial)
+					n = Math.signum(n) * response(Math.abs(n), s.deadzone, s.saturation, s.curve);
+				t[i] = (short) Math.round(n * 32767);
+			}
+			return t;
+		}
+
+		//Q14 factor taking a normalised (x, y) to its response, by x*x + y*y
+		private static short[] radial(Stick s)
+		{
+			short[] t = new short[RADIAL_SIZE];
+			for (int i = 0; i < RADIAL_SIZE; i++)
+			{
+				double r = Math.sqrt((i + 0.5) * (1 << RADIAL_SHIFT)) / 32767;
+				double scale = response(r, s.deadzone, s.saturation, s.curve) / r;
+				t[i] = (short) Math.min(Short.MAX_VALUE, Math.round(scale * SCALE_ONE));
+			}
+			return t;
+		}
+
+		private static byte[] trigger(Trigger tr)
+		{
+			byte[] t = new byte[256];
+			for (int i = 0; i < 256; i++)
+				t[i] = (byte) Math.round(response(i / 255.0, tr.deadzone, 1, tr.curve) * 255);
+			return t;
+		}
+
+		private static int clamp(int v)
+		{
+			return v > 32767 ? 32767 : (v < -32767 ? -32767 : v);
+		}
+
+		//reader thread, rewrites the decoded state in place
+		void apply(XpadState s)
+		{
+			int x = lx[(s.lx + 32768) >> AXIS_SHIFT];
+			int y = ly[(s.ly + 32768) >> AXIS_SHIFT];
+			if (leftScale != null)
+			{
+				int k = leftScale[(x * x + y * y) >>> RADIAL_SHIFT];
+				x = clamp((x * k) >> 14);
+				y = clamp((y * k) >> 14);
+			}
+			s.lx = (short) x;
+			s.ly = (short) y;
+
+			x = rx[(s.rx + 32768) >> AXIS_SHIFT];
+			y = ry[(s.ry + 32768) >> AXIS_SHIFT];
+			if (rightScale != null)
+			{
+				int k = rightScale[(x * x + y * y) >>> RADIAL_SHIFT];
+				x = clamp((x * k) >> 14);
+				y = clamp((y * k) >> 14);
+			}
+			s.rx = (short) x;
+			s.ry = (short) y;
+
+			s.lt = lt[s.lt & 0xFF];
+			s.rt = rt[s.rt & 0xFF];
+		}
+	}
+}
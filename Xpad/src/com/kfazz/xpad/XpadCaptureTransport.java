@@ -0,0 +1,154 @@
+package com.kfazz.xpad;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+//Passes everything through to another transport and appends each completed
+//read to a file in XpadReplayTransport's format, for replaying later. Runs on
+//the reader thread; if the file can't be written capture stops and input
+//carries on.
+class XpadCaptureTransport implements XpadTransport {
+
+	private static final String TAG = "XpadCapture";
+
+	//set to record every reader's input to <dir>/<name>.xpcap
+	private static volatile File sDirectory = null;
+
+	private final XpadTransport mInner;
+	private final File mFile;
+	private DataOutputStream mOut; //null until the first read, or after an error
+	private boolean mFailed = false;
+	private long mStart;
+	private ByteBuffer[] mBuffers = new ByteBuffer[0];
+	private int[] mReadSlot = new int[0];
+
+	XpadCaptureTransport(XpadTransport inner, File file)
+	{
+		mInner = inner;
+		mFile = file;
+	}
+
+	//captures go to 'dir' for readers started from now on, null to stop
+	static void setDirectory(File dir)
+	{
+		sDirectory = dir;
+	}
+
+	//'transport' itself unless capturing is on
+	static XpadTransport wrap(XpadTransport transport, String name)
+	{
+		File dir = sDirectory;
+		if (dir == null)
+			return transport;
+		return new XpadCaptureTransport(transport,
+				new File(dir, name.replaceAll("[^A-Za-z0-9_-]", "_") + ".xpcap"));
+	}
+
+	public int getSlotCount()
+	{
+		return mInner.getSlotCount();
+	}
+
+	public int getMaxPacketSize(int slot)
+	{
+		return mInner.getMaxPacketSize(slot);
+	}
+
+	public boolean openRead(int id, int slot, ByteBuffer buffer)
+	{
+		if (id >= mBuffers.length)
+		{
+			ByteBuffer[] buffers = new ByteBuffer[id + 1];
+			int[] readSlot = new int[id + 1];
+			System.arraycopy(mBuffers, 0, buffers, 0, mBuffers.length);
+			System.arraycopy(mReadSlot, 0, readSlot, 0, mReadSlot.length);
+			mBuffers = buffers;
+			mReadSlot = readSlot;
+		}
+		mBuffers[id] = buffer;
+		mReadSlot[id] = slot;
+		return mInner.openRead(id, slot, buffer);
+	}
+
+	public boolean queueRead(int id, int length)
+	{
+		return mInner.queueRead(id, length);
+	}
+
+	public int waitRead()
+	{
+		int id = mInner.waitRead();
+		if (id >= 0 && !mFailed)
+		{
+			long now = System.nanoTime();
+			try {
+				if (mOut == null)
+					open(now);
+				ByteBuffer buffer = mBuffers[id];
+				int length = buffer.remaining();
+				mOut.writeLong(now - mStart);
+				mOut.writeByte(mReadSlot[id]);
+				mOut.writeShort(length);
+				for (int i = 0; i < length; i++)
+					mOut.writeByte(buffer.get(buffer.position() + i));
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		return id;
+	}
+
+	private void open(long now) throws IOException
+	{
+		mStart = now;
+		mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile)));
+		int slots = mInner.getSlotCount();
+		mOut.writeInt(XpadReplayTransport.MAGIC);
+		mOut.writeInt(XpadReplayTransport.VERSION);
+		mOut.writeInt(slots);
+		for (int i = 0; i < slots; i++)
+			mOut.writeInt(mInner.getMaxPacketSize(i));
+		Log.d(TAG, "capturing to " + mFile);
+	}
+
+	private void fail(IOException e)
+	{
+		Log.d(TAG, "capture to " + mFile + " failed: " + e);
+		mFailed = true;
+		closeFile();
+	}
+
+	private void closeFile()
+	{
+		if (mOut == null)
+			return;
+		try {
+			mOut.close();
+		} catch (IOException e) {
+			Log.d(TAG, "closing " + mFile + ": " + e);
+		}
+		mOut = null;
+	}
+
+	public void closeReads()
+	{
+		mInner.closeReads();
+		closeFile();
+	}
+
+	public void close()
+	{
+		mInner.close();
+	}
+
+	public int write(int slot, byte[] data, int length, int timeoutMs)
+	{
+		return mInner.write(slot, data, length, timeoutMs);
+	}
+}
@@ -1,85 +1,329 @@
 package com.kfazz.xpad;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.Activity;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbDeviceConnection;
-import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbInterface;
-import android.hardware.usb.UsbRequest;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 
-public class XpadDevice implements Runnable {
+public class XpadDevice {
 
 	private static final String TAG = "XpadDevice";
 
 	private Activity mActivity; // handle to calling activity
 	public final UsbDevice mDevice; // handle to Usb device, used for guarding against
-								//adding a device twice.
-	private UsbDeviceConnection mConnection; // device connection
-	private UsbInterface mInterface; //The interface
+								//adding a device twice. null when replaying.
+	private final XpadTransport mTransport; //usb connection, or a replay
+	private final int mSlot; //our pipes on mTransport
 	private boolean isWireless=false; // is controller wireless?
+	private final XpadLayout mLayout; // how to decode its input reports
 
-	private UsbEndpoint epIn, epOut; //endpoints for comms
+	//for controlling the reader thread, which may be shared with other slots
+	private volatile boolean running = false;
+	//a controller is attached. Always true for a started wired pad; a wireless
+	//slot stays parked until the receiver reports a controller on it.
+	private volatile boolean mConnected = false;
+	private volatile XpadReader mReader;
+	private volatile int mReaderMode = XpadReader.MODE_BALANCED;
 
-	//for controlling the reader thread
-	private boolean running = false;
+	//led, rumble and power commands, sent from the output's own thread
+	private XpadOutput mOutput;
+
+	//number of reads kept queued on our input pipe, each with its own buffer
+	static final int DEFAULT_PIPELINE_DEPTH = 4;
+	private int mPipelineDepth = DEFAULT_PIPELINE_DEPTH;
+
+	//stick and trigger lookup tables applied on decode, null for raw values
+	private volatile XpadCalibration.Compiled mCalibration = null;
+
+	//counters for the app to poll, see getMetrics()
+	private final XpadMetrics mMetrics = new XpadMetrics();
 
 	// which led should be lit on the controller
 	private int mPlayerNum = 0;
 
-	static private int numplayers=0;
-
-	//wireless only
-	int batt_level;
+	//connected controllers across all devices, changed only on a
+	//mConnected transition so a repeated status message can't skew it
+	static private final AtomicInteger numplayers = new AtomicInteger(0);
 
+	//wired pad on a claimed interface
 	XpadDevice(Activity activity, UsbDevice device, UsbDeviceConnection connection,
-			UsbInterface intf, boolean wireless, int playerNum)
+			UsbInterface intf, XpadLayout layout, int playerNum)
+			{
+		this(activity, device, usbTransport(connection, intf), 0, layout, playerNum);
+			}
+
+	//controller on slot 'slot' of any transport, device may be null
+	XpadDevice(Activity activity, UsbDevice device, XpadTransport transport, int slot,
+			XpadLayout layout, int playerNum)
 			{
 		mActivity = activity;
 
 		mDevice = device;
 		
-		mConnection = connection;
-		mInterface = intf;
-		isWireless = wireless; //usb device is dongle
+		mTransport = transport;
+		mSlot = slot;
+		mLayout = layout;
+		isWireless = layout.wireless; //usb device is dongle
 		mPlayerNum = playerNum;
-
-		epIn = epOut = null;
 			}
 
+	private static XpadTransport usbTransport(UsbDeviceConnection connection, UsbInterface intf)
+	{
+		XpadUsbTransport transport = new XpadUsbTransport(connection);
+		transport.addSlot(intf);
+		return transport;
+	}
+
+	//wired pad, gets a reader thread of its own
 	public void XpadStart()
 	{
-		Log.d(TAG, "in start(), isWireless " + isWireless + " player #" + mPlayerNum);
-		epIn  = mInterface.getEndpoint(0); // Controller events
-		epOut = mInterface.getEndpoint(1); //messages to controller
+		String name = "Xpad #" + mPlayerNum;
+		XpadReader reader = new XpadReader(XpadCaptureTransport.wrap(mTransport, name), name);
+		XpadStart(reader);
+		reader.start();
+	}
 
-		running = true; // allow thread to run
-		Thread thread = new Thread(this); 
-		thread.start();
+	//dongle slot, the caller starts the shared reader once every slot is added
+	void XpadStart(XpadReader reader)
+	{
+		Log.d(TAG, "in start(), isWireless " + isWireless + " player #" + mPlayerNum);
 
-		numplayers++;
+		//rumble packets, motor bytes at offsets 5, 6 wireless and 3, 4 wired
+		byte[] rumble;
+		if (isWireless)
+			rumble = new byte[] { 0x00, 0x01, 0x0f, (byte)0xc0, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+		else
+			rumble = null; //{ 0x00, 0x08, 0x00, left, right, 0x00, 0x00, 0x00 } FIXME needs more than 500ma from hub
+		mOutput = new XpadOutput(mTransport, mSlot, "Xpad #" + mPlayerNum, rumble, 5, 6);
+		mOutput.start();
+
+		running = true; // allow reader to queue requests for us
+		mReader = reader;
+		mReader.addSlot(this);
+		mReader.setMode(mReaderMode);
 	}
 
 	public void XpadStop()
 	{
 		//if we're called from usb disco event, we can't turn off controller, but at least stop the thread...
 		running = false; //stop reading from controller
-		powerDown(); //turn off controller if it's wireless
-		numplayers--;
+		if (mConnected)
+			powerDown(); //turn off controller if it's wireless
+		setConnected(false);
+		mOutput.stop(); //writer exits once the power down is sent
+
+		//last slot on the reader, it closes the transport on its way out
+		XpadReader reader = mReader;
+		if (reader != null && !reader.anySlotAlive())
+			reader.stop();
 	}
 
+	//reader thread, before it closes the transport
+	void awaitOutput(long ms)
+	{
+		if (mOutput != null)
+			mOutput.join(ms);
+	}
+
+	//slot is still being read, whether or not a controller is attached
 	boolean isAlive()
 	{
-		return running; //return current state in case
-		//game wants to skip a wireless port that doesn't have a controller paired to it
+		return running;
 	}
+
+	//a controller is attached, games can skip wireless slots where this is false
+	public boolean isConnected()
+	{
+		return mConnected;
+	}
+
+	//Called on the reader thread when the receiver reports a controller
+	//arriving or leaving, and from XpadStop(). Lights the LED on the way up;
+	//on the way down stops any rumble and publishes a released state so the
+	//game doesn't see buttons stuck down.
+	private synchronized void setConnected(boolean connected)
+	{
+		if (connected == mConnected)
+			return;
+		mConnected = connected;
+		if (connected)
+		{
+			numplayers.incrementAndGet();
+			Log.d(TAG, "Xpad #" + mPlayerNum + " connected, setting led");
+			ledCommand(this.mPlayerNum);
+		}
+		else
+		{
+			numplayers.decrementAndGet();
+			Log.d(TAG, "Xpad #" + mPlayerNum + " disconnected");
+			if (mOutput != null)
+				mOutput.getEffects().stopAll();
+			if (running)
+				releaseAll();
+		}
+	}
+	public int getPlayerNum()
+	{
+		return mPlayerNum;
+	}
+
 	public int num_players()
 	{
-		return numplayers;
+		return numplayers.get();
+	}
+
+	//must be called before XpadStart(), 1 gives the old single-request behaviour
+	public void setPipelineDepth(int depth)
+	{
+		mPipelineDepth = Math.max(1, depth);
+	}
+
+	public int getPipelineDepth()
+	{
+		return mPipelineDepth;
+	}
+
+	//compiles 'c' for the reader thread, takes effect from the next report.
+	//Later changes to 'c' need another call. null goes back to raw values.
+	public void setCalibration(XpadCalibration c)
+	{
+		mCalibration = c != null ? new XpadCalibration.Compiled(c) : null;
+	}
+
+	//XpadReader.MODE_LOW_LATENCY, MODE_BALANCED or MODE_POWER_SAVE, may be
+	//changed while running. The slots of a wireless receiver share one reader,
+	//so setting it on one slot sets it for all four.
+	public void setReaderMode(int mode)
+	{
+		mReaderMode = mode;
+		XpadReader reader = mReader;
+		if (reader != null)
+			reader.setMode(mode);
+	}
+
+	public int getReaderMode()
+	{
+		XpadReader reader = mReader;
+		return reader != null ? reader.getMode() : mReaderMode;
+	}
+
+	//measured reader wakeups per second over all the time spent in 'mode'
+	public double getWakeupRate(int mode)
+	{
+		XpadReader reader = mReader;
+		return reader != null ? reader.getWakeupRate(mode) : 0;
+	}
+
+	//fills 'into' with this pad's counters, reuse it between polls
+	public void getMetrics(XpadMetrics.Snapshot into)
+	{
+		mMetrics.snapshot(into, mEvents, mOutput, mReader);
+	}
+
+	//wireless only, -1 until the pad reports it
+	public int getBatteryLevel()
+	{
+		return mMetrics.battery;
+	}
+
+	XpadMetrics metrics()
+	{
+		return mMetrics;
+	}
+
+	//our slot on the reader's transport
+	int getTransportSlot()
+	{
+		return mSlot;
+	}
+
+	//called on the reader thread before any requests are queued. A wired pad
+	//is there already; a wireless slot asks the receiver whether a controller
+	//is attached and waits for the 0x08 status message in reply.
+	void onReaderStarted()
+	{
+		if (isWireless)
+		{
+			byte[] bytes = { 0x08, 0x00, 0x0f, (byte)0xc0, 00, 00, 00, 00, 00, 00, 00, 00 };
+			mOutput.send(bytes);
+		}
+		else
+			setConnected(true);
+		//rumble((byte)0x255, (byte)0x255);
+	}
+
+	//reads the reader keeps queued for this slot, just enough to hear the
+	//next status message while no controller is attached
+	int getQueuedReads()
+	{
+		return mConnected ? mPipelineDepth : 1;
+	}
+
+	//duplicate report suppression, reader thread only
+	static final int REPORT_COMPARE_LENGTH = 20;
+	private long mLastReport0, mLastReport1;
+	private int mLastReport2;
+	private int mLastReportLength = -1;
+	private long mLastDecodeTime = 0;
+	private volatile long mHeartbeatNanos = 0; //0: never re-decode an unchanged report
+
+	//let an unchanged report through at least this often, 0 to suppress all repeats
+	public void setHeartbeatInterval(long ms)
+	{
+		mHeartbeatNanos = Math.max(0, ms) * 1000000L;
+	}
+
+	//called on the reader thread with the completed request's buffer, which is
+	//re-queued as soon as we return, so nothing may keep a reference to it.
+	//timestamp is System.nanoTime() when waitRead() returned it.
+	void onReport(ByteBuffer buffer, int length, long timestamp)
+	{
+		mReportTime = timestamp;
+		mMetrics.reports++;
+
+		//an idle pad keeps sending the same report and an empty wireless slot
+		//keeps sending null responses, only decode when the first 20 bytes
+		//(the whole wired report, everything we use of a wireless one) change
+		if (buffer.capacity() >= REPORT_COMPARE_LENGTH)
+		{
+			long w0 = buffer.getLong(0);
+			long w1 = buffer.getLong(8);
+			int w2 = buffer.getInt(16);
+			if (w0 == mLastReport0 && w1 == mLastReport1 && w2 == mLastReport2
+					&& length == mLastReportLength)
+			{
+				if (mHeartbeatNanos == 0 || System.nanoTime() - mLastDecodeTime < mHeartbeatNanos)
+				{
+					mMetrics.suppressed++;
+					return;
+				}
+			}
+			mLastReport0 = w0;
+			mLastReport1 = w1;
+			mLastReport2 = w2;
+			mLastReportLength = length;
+			if (mHeartbeatNanos != 0)
+				mLastDecodeTime = System.nanoTime();
+		}
+
+		//every supported pad decodes through the same path, driven by its layout
+		if (mLayout.isInputReport(buffer, length))
+		{
+			//in case we missed the status message. Checked first so the usual
+			//report doesn't take setConnected()'s lock, it rechecks inside.
+			if (!mConnected)
+				setConnected(true);
+			decodeEvent(buffer);
+			passevent();
+		}
+		else if (isWireless)
+			parseWireless(buffer, length); //receiver status messages
+		else
+			mMetrics.unknown++;
 	}
 
 	//Input report:
@@ -111,118 +355,230 @@ public class XpadDevice implements Runnable {
 0x0c.0	 16	 Right stick Y-axis	 Y-turn
 0x0e.0	 48	 Unused */
 
-	void passevent(final XpadEventMsg msg)
+	//Decoded events go into a preallocated ring that the game drains once per
+	//frame, instead of posting a Runnable to the UI looper for every report.
+	static final int EVENT_RING_SIZE = 32;
+
+	private final XpadEventRing mEvents = new XpadEventRing(EVENT_RING_SIZE);
+	private final XpadEventMsg mEvent = new XpadEventMsg(this); //reader thread's scratch event
+
+	//Latest state for games that poll at frame time instead of draining events.
+	//The reader is the only writer; mStateSeq is odd while it is mid update, so
+	//a reader that sees the same even sequence before and after copying the
+	//two words knows it didn't get a torn state.
+	private volatile int mStateSeq = 0;
+	private volatile long mStateLow = 0;
+	private volatile int mStateHigh = 0;
+
+	private final XpadState mPrevState = new XpadState(); //reader thread only
+	private long mReportTime = 0; //reader thread only, stamp of the report being parsed
+
+	//decodes into the reader's scratch event and the polled state
+	void decodeEvent(ByteBuffer buffer)
 	{
-		//Log.d(TAG, "passing event to View on UI thread");
-		//We're still in Non UI context, need to call into View object from UI thread
-		new Handler(Looper.getMainLooper()).post(new Runnable() {
-			@Override
-			public void run() {
-				//if(((GameView) mActivity.findViewById(R.id.game)).hasFocus())
-					((GameView) mActivity.findViewById(R.id.game)).onXpadMotionEvent(msg);
-			}
-		});		
-	}
-
-	void parseWired(byte[] buffer)
-	{
-		//for Wired controller we only care about event msgs for now
-		//Log.d(TAG, "parseWired buffer:" + buffer.length + "buffer[1]:" + buffer[1]);
-		switch (buffer.length) {
-		case 32: {
-			if (buffer[0]==0x00 && buffer[1]==0x14) { //Event Message
-				XpadEventMsg event =  new XpadEventMsg(buffer[2], buffer[3], buffer[4], buffer[5],
-						((( 128+(int)buffer[7])<<8)|(0xFF&(int)buffer[6])),//promote the bytes to ints
-						((( 128+(int)buffer[9])<<8)|(0xFF&(int)buffer[8])),//strip the sign
-						((( 128+(int)buffer[11])<<8)|(0xFF&(int)buffer[10])),//shift highbyte left
-						((( 128+(int)buffer[13])<<8)|(0xFF&(int)buffer[12])), this, mPlayerNum);//or with lobyte
-				passevent(event); 
+		mPrevState.copyFrom(mEvent);
+		mEvent.setPlayer(mPlayerNum);
+		mEvent.set(buffer, mLayout);
+		XpadCalibration.Compiled calibration = mCalibration;
+		if (calibration != null)
+			calibration.apply(mEvent);
+		publishState();
+		mMetrics.decoded++;
+
+		XpadLatency.DECODE.record(System.nanoTime() - mReportTime);
+	}
+
+	//neutral state after the controller goes away
+	private void releaseAll()
+	{
+		mPrevState.copyFrom(mEvent);
+		mEvent.setPlayer(mPlayerNum);
+		mEvent.unpack(0, 0);
+		publishState();
+		passevent();
+	}
+
+	//fills in the edges of mEvent against mPrevState and publishes it as the
+	//polled state
+	private void publishState()
+	{
+		mEvent.prevButtons = mPrevState.buttons;
+		mEvent.changedAxes = (byte) mEvent.axesChangedSince(mPrevState);
+		mEvent.timestamp = mReportTime;
+
+		int seq = mStateSeq;
+		mStateSeq = seq + 1;
+		mStateLow = mEvent.packLow();
+		mStateHigh = mEvent.packHigh();
+		mStateSeq = seq + 2;
+	}
+
+	//Copies the current state into 'into' without locking, from any thread.
+	//Returns the number of updates so far, so a caller can tell whether
+	//anything changed since its last poll.
+	public int poll(XpadState into)
+	{
+		for (;;)
+		{
+			int seq = mStateSeq;
+			if ((seq & 1) != 0)
+				continue; //reader is mid update
+			long low = mStateLow;
+			int high = mStateHigh;
+			if (mStateSeq == seq)
+			{
+				into.unpack(low, high);
+				return seq >>> 1;
 			}
 		}
-		default:
+	}
+
+	//Subscriptions for this pad's player, resolved by the XpadInputBus, and
+	//the union of what they want so unwanted events never reach the ring.
+	private volatile XpadInputBus.Subscription[] mSubscriptions = new XpadInputBus.Subscription[0];
+	private volatile int mWantButtons = 0, mWantAxes = 0;
+	private volatile boolean mWantAny = false;
+
+	void setSubscriptions(XpadInputBus.Subscription[] subs)
+	{
+		int buttons = 0, axes = 0;
+		for (XpadInputBus.Subscription s : subs)
+		{
+			buttons |= s.buttons;
+			axes |= s.axes;
+		}
+		mSubscriptions = subs;
+		mWantButtons = buttons;
+		mWantAxes = axes;
+		mWantAny = subs.length > 0;
+	}
+
+	XpadInputBus.Subscription[] getSubscriptions()
+	{
+		return mSubscriptions;
+	}
+
+	//publishes the event from decodeEvent() for the bus to drain, if anyone
+	//subscribed to what changed
+	void passevent()
+	{
+		int changed = (mEvent.buttons ^ mEvent.prevButtons) & 0xFFFF;
+		boolean heartbeat = changed == 0 && mEvent.changedAxes == 0;
+		if (!mWantAny || !(heartbeat || (changed & mWantButtons) != 0
+				|| (mEvent.changedAxes & mWantAxes) != 0))
+		{
+			mMetrics.filtered++;
 			return;
 		}
+		mEvents.publish(mEvent);
 	}
 
-	void parseWireless(byte[] buffer)
+	//consumer side, copies the oldest undrained event into 'into', false when
+	//empty. Only one thread may drain a device, normally XpadInputBus.drain().
+	public boolean pollEvent(XpadEventMsg into)
 	{
-		switch (buffer[0])
+		return mEvents.poll(into);
+	}
+
+	//XpadEventRing.OVERFLOW_DROP_OLDEST or OVERFLOW_COALESCE
+	public void setOverflowPolicy(int policy)
+	{
+		mEvents.setOverflowPolicy(policy);
+	}
+
+	//events dropped or coalesced because the game fell a whole ring behind
+	public long getOverflowCount()
+	{
+		return mEvents.getOverflowCount();
+	}
+
+	//everything a receiver sends besides input reports
+	void parseWireless(ByteBuffer buffer, int length)
+	{
+		switch (buffer.get(0))
 		{
 		case 0x00:
-			if ((buffer[1] ==(byte) 0x0f) && (buffer[2] == 0x00) && (buffer[3] == (byte)0xf0)) {
+			if ((buffer.get(1) ==(byte) 0x0f) && (buffer.get(2) == 0x00) && (buffer.get(3) == (byte)0xf0)) {
 				Log.d(TAG, "Controller Announce");
-				Log.d(TAG, "Battery: " + ((int)buffer[17] & 0xFF)); //bytes are signed in java...
-				batt_level = ((int)buffer[17] & 0xFF);
-				Log.d(TAG, "setting led " + this.mPlayerNum );
-				ledCommand(this.mPlayerNum);
-			}
-			if ((buffer[1] == 0x01) && (buffer[2] == 0x00) && (buffer[3] == (byte)0xf0)
-					&& (buffer[4] == 0x00) && (buffer[5] == 0x13)) {
-				//Event packet same as wired response packet just need to skip 3 more bytes
-				XpadEventMsg event =  new XpadEventMsg(buffer[6], buffer[7], buffer[8], buffer[9],
-						(double)((( 128+(int)buffer[11])<<8)|(0xFF&(int)buffer[10])),//promote the bytes to ints
-						(double)((( 128+(int)buffer[13])<<8)|(0xFF&(int)buffer[12])),//strip the sign
-						(double)((( 128+(int)buffer[15])<<8)|(0xFF&(int)buffer[14])),//shift highbyte left
-						(double)((( 128+(int)buffer[17])<<8)|(0xFF&(int)buffer[16])), this, mPlayerNum);//or with lobyte
-				passevent(event);
-				//Log.d(TAG, "Event resp.");
-
+				mMetrics.battery = ((int)buffer.get(17) & 0xFF); //bytes are signed in java...
+				if (mConnected)
+					ledCommand(this.mPlayerNum); //pad re-synced, light it again
+				else
+					setConnected(true);
 			}
-			if ((buffer[1] == 0x00) && (buffer[2] == 0x00) && (buffer[3] == 0x13)) {
-				Log.d(TAG, "Battery: " + ((int)buffer[4] & 0xFF));
-				batt_level = ((int)buffer[4] & 0xFF);
+			else if ((buffer.get(1) == 0x00) && (buffer.get(2) == 0x00) && (buffer.get(3) == 0x13)) {
+				mMetrics.battery = ((int)buffer.get(4) & 0xFF);
 			}
-			if ((buffer[1] == 0x00) && (buffer[2] == 0x00) && (buffer[3] == (byte)0xf0)) {
-				//Log.d(TAG, "Null Resp.");
+			else if ((buffer.get(1) == 0x00) && (buffer.get(2) == 0x00) && (buffer.get(3) == (byte)0xf0)) {
+				//Null Resp.
 			}
+			else
+				mMetrics.unknown++;
 			break;
 		case 0x08:
-			if (buffer[1]==0x00)
+			//connection status, sent when a controller comes or goes and in
+			//reply to the inquiry from onReaderStarted()
+			if (buffer.get(1)==0x00)
 			{
 				Log.d(TAG, "CSM: Nothing Connected."); 
-				numplayers--;
+				setConnected(false);
 			}
-			else if (buffer[1]==0x40) 
+			else if (buffer.get(1)==0x40) 
 			{
 				Log.d(TAG, "CSM: Headset Only.");
-				numplayers--;
+				setConnected(false);
 			}
-			else if (buffer[1]==(byte)0x80)
+			else if (buffer.get(1)==(byte)0x80)
+			{
 				Log.d(TAG, "CSM: Controller.");
-			else if (buffer[1]==(byte)0xc0) 
+				setConnected(true);
+			}
+			else if (buffer.get(1)==(byte)0xc0) 
+			{
 				Log.d(TAG, "CSM: Controller + headset.");
+				setConnected(true);
+			}
+			else
+				mMetrics.unknown++;
 			break;
 
 		default:
+			mMetrics.unknown++;
 			return;	
 		}
 	}
 
+	//output commands are queued for the writer thread, none of these block,
+	//queue depth and transfer latency are on the XpadOutput
+	public XpadOutput getOutput()
+	{
+		return mOutput;
+	}
+
 	public void ledCommand(int num)
 	{
 		if (isWireless)
 		{
 			byte[] bytes = {0x00, 0x00, 0x08, (byte) (0x40 +((num + 5) % 0x0e)),0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
-			mConnection.bulkTransfer(epOut, bytes, bytes.length, 500); //synchronous bulk transfer 500ms timeout
+			mOutput.send(bytes);
 		}	
 		else {
 			byte[] bytes = {0x01,0x03,(byte)(num + 5)};
-			mConnection.bulkTransfer(epOut, bytes, bytes.length, 500); //synchronous bulk transfer 500ms timeout
+			mOutput.send(bytes);
 		}
 	}
 
+	//latest wins, a newer value replaces one the writer hasn't sent yet
 	public void rumble (byte left, byte right)
 	{
-		if (isWireless) {
-			byte bytes[] = { 0x00, 0x01, 0x0f, (byte)0xc0, 0x00, left, right, 0x00, 0x00, 0x00, 0x00, 0x00 };
-			mConnection.bulkTransfer(epOut, bytes, bytes.length, 500); //synchronous bulk transfer 500ms timeout
-		}
-		else
-		{
-			byte bytes[] = { 0x00, 0x08, 0x00, left,  right, 0x00, 0x00, 0x00 };
-			//FIXME needs more than 500ma from hub
-			//	mConnection.bulkTransfer(epOut, bytes, bytes.length, 500); //synchronous bulk transfer 500ms timeout
-		}
+		mOutput.rumble(left, right);
+	}
+
+	//mixed with any other effects still playing, see XpadRumble.play()
+	public boolean rumbleEffect(int left, int right, int durationMs, int attackMs,
+			int releaseMs, int priority)
+	{
+		return mOutput.playEffect(left, right, durationMs, attackMs, releaseMs, priority);
 	}
 
 	public void powerDown()
@@ -231,60 +587,10 @@ public class XpadDevice implements Runnable {
 		{
 			byte [] bytes = { 00, 00, 0x08,(byte) 0xc0, 00, 00, 00, 00, 00, 00, 00, 00 };
 			Log.d(TAG, "Powering down Controller #" + mPlayerNum);
-			mConnection.bulkTransfer(epOut, bytes, bytes.length, 500); //synchronous bulk transfer 500ms timeout
+			mOutput.send(bytes);
 			return;
 		}
 		Log.d(TAG, "Attempting to power down wired controller, doing nothing.");
 		return;
 	}
-
-	@Override 
-	public void run()
-	{
-		ledCommand(this.mPlayerNum);
-		//rumble((byte)0x255, (byte)0x255);
-
-		int bufferDataLength = epIn.getMaxPacketSize();
-		Log.d(TAG, "Max Packet size:" + bufferDataLength);
-		ByteBuffer buffer = ByteBuffer.allocate(bufferDataLength); //+1?
-
-		UsbRequest requestQueued = null;
-		UsbRequest request = new UsbRequest();
-		request.initialize(mConnection, epIn);
-		do
-		{
-			request.queue(buffer, bufferDataLength);
-			requestQueued = mConnection.requestWait();
-
-			if (request.equals(requestQueued))
-			{
-				byte[] byteBuffer = new byte[buffer.remaining()];
-				buffer.get(byteBuffer);
-				
-				//Log.d(TAG, "Xpad #" + mPlayerNum + " Rx'd Msg Size:" + byteBuffer.length);
-
-				//for (int i =0;i<byteBuffer.length;i++)
-				//	Log.d(TAG,"bytebuffer[" + i + "]:" + byteBuffer[i]);
-
-				if (isWireless)
-					parseWireless(byteBuffer);
-				else
-					parseWired(byteBuffer);
-				buffer.clear();
-			}
-			else
-			{
-				try {
-					Thread.sleep(20);
-				} catch (InterruptedException e) {
-					Log.d(TAG, "Thread Interrupted.");
-				}
-			}
-		} while (running);
-		
-		Log.d(TAG,"Controller #" + mPlayerNum +"'s Reader thread dying.");
-		request.cancel();
-		request.close();
-		return;
-	}
 }
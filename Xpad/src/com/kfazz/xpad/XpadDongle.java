@@ -0,0 +1,56 @@
+package com.kfazz.xpad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.app.Activity;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbInterface;
+import android.util.Log;
+
+//Wireless receiver driver. The device is opened once and the four controller
+//slots share that connection and a single reader thread. There is no stop,
+//once every slot has had XpadStop() called on it the reader thread exits and
+//closes the connection.
+public class XpadDongle {
+
+	private static final String TAG = "XpadDongle";
+
+	public final UsbDevice mDevice;
+	private XpadUsbTransport mTransport; //one slot per claimed interface
+	private XpadReader mReader;
+	private final ArrayList<XpadDevice> mSlots = new ArrayList<XpadDevice>();
+
+	//one slot per interface listed in the layout
+	XpadDongle(Activity activity, UsbDevice device, UsbDeviceConnection connection,
+			XpadLayout layout, int firstPlayerNum)
+	{
+		mDevice = device;
+		mTransport = new XpadUsbTransport(connection);
+
+		for (int n : layout.interfaces)
+		{
+			UsbInterface intf = device.getInterface(n);
+			if (connection.claimInterface(intf, true)) //true here kicks out the kernel driver
+				mSlots.add(new XpadDevice(activity, device, mTransport, mTransport.addSlot(intf),
+						layout, firstPlayerNum + mSlots.size()));
+			else
+				Log.d(TAG, "Failed to claim interface" + intf.getId() + " on device" + device);
+		}
+	}
+
+	public List<XpadDevice> getSlots()
+	{
+		return mSlots;
+	}
+
+	public void XpadStart()
+	{
+		String name = "Xpad dongle " + mDevice.getDeviceName();
+		mReader = new XpadReader(XpadCaptureTransport.wrap(mTransport, name), name);
+		for (XpadDevice slot : mSlots)
+			slot.XpadStart(mReader);
+		mReader.start();
+	}
+}
@@ -1,6 +1,6 @@
 package com.kfazz.xpad;
 
-public class XpadEventMsg {
+public class XpadEventMsg extends XpadState {
 	/* Offset	 Length (bits)	 Description	 Windows driver
 0x00.0	 8	 Message type
 0x01.0	 8	 Packet size (20 bytes = 0x14)
@@ -39,112 +39,99 @@ public class XpadEventMsg {
 
 0x0e.0	 48	 Unused */
 
-	private boolean dup, ddown, dleft, dright;
-	private boolean start, back, ls, rs; //left and right stick press events
-	private boolean lb, rb, xb; //left shoulder button, right shoulder button, X buton
-	private boolean a,b,x,y;
-	private int lt, rt; //left trigger, right trigger;
-	private double lx, ly; //Left joystick
-	private double rx, ry; //Right joystick
+	//buttons, triggers and sticks live packed in XpadState
+	short prevButtons; //buttons from this pad's previous event, for edge queries
+	byte changedAxes; //AXIS_* bits that moved since the previous event
+	long timestamp; //System.nanoTime() when the reader got the report
 	private XpadDevice mDevice; //handle to device that sent this event, allows game to callback
 	//for rumble , led, or turning off controller
 	private int mPlayerNum;
 
-	public XpadEventMsg(byte two, byte three, byte four, byte five, double lx, double ly, double rx, double ry, XpadDevice dev, int pId)
+	//blank message for preallocated event storage, filled in by set()
+	XpadEventMsg(XpadDevice dev)
 	{
-		mPlayerNum = pId;
 		mDevice = dev;
-		dup=ddown=dleft=dright=start=back=ls=rs=lb=rb=xb=a=b=x=y=false;
-		int i;
-		i = (int)(two & 0xFF);
-		if ((i & (1 << 0))!=0)
-			dup = true;
-		if ((i & (1 << 1))!=0)
-			ddown = true;
-		if ((i & (1 << 2))!=0)
-			dleft = true;
-		if ((i & (1 << 3))!=0)
-			dright = true;
-		if ((i & (1 << 4))!=0)
-			start = true;
-		if ((i & (1 << 5))!=0)
-			back = true;
-		if ((i & (1 << 6))!=0)
-			ls = true;
-		if ((i & (1 << 7))!=0)
-			rs = true;
-
-		i = (int)(three & 0xFF);
-		if ((i & (1 << 0))!=0)
-			lb = true;
-		if ((i & (1 << 1))!=0)
-			rb= true;
-		if ((i & (1 << 2))!=0)
-			xb = true;
-		//if ((i & (1 << 3))!=0)
-		//dummy bit
-		if ((i & (1 << 4))!=0)
-			a = true;
-		if ((i & (1 << 5))!=0)
-			b = true;
-		if ((i & (1 << 6))!=0)
-			x = true;
-		if ((i & (1 << 7))!=0)
-			y = true;
-
-		//triggers
-		lt = (int)(four & 0xFF);
-		rt = (int)(five & 0xFF);
-
-		//sticks
-		this.lx = lx;
-		this.ly = ly;
-		this.rx = rx;
-		this.ry = ry;
 	}
 
+	void setPlayer(int pId)
+	{
+		mPlayerNum = pId;
+	}
+
+	void copyEvent(XpadEventMsg o)
+	{
+		copyFrom(o);
+		prevButtons = o.prevButtons;
+		changedAxes = o.changedAxes;
+		timestamp = o.timestamp;
+		mDevice = o.mDevice;
+		mPlayerNum = o.mPlayerNum;
+	}
+
+	//System.nanoTime() when waitRead() returned this report
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public XpadDevice getDevice()
+	{
+		return mDevice;
+	}
+
+	//any button in mask went down with this event
+	public boolean pressed(int mask){
+		return ((buttons ^ prevButtons) & buttons & mask) != 0;}
+	//any button in mask came up with this event
+	public boolean released(int mask){
+		return ((buttons ^ prevButtons) & prevButtons & mask) != 0;}
+	//any axis in mask (XpadState.AXIS_*) moved with this event
+	public boolean moved(int mask){
+		return (changedAxes & mask) != 0;}
+
 	public boolean get_d_up(){
-		return dup;}
+		return (buttons & BTN_D_UP) != 0;}
 	public boolean get_d_down(){
-		return ddown;}
+		return (buttons & BTN_D_DOWN) != 0;}
 	public boolean get_d_left(){
-		return dleft;}
+		return (buttons & BTN_D_LEFT) != 0;}
 	public boolean get_d_right(){
-		return dright;}
+		return (buttons & BTN_D_RIGHT) != 0;}
 	public boolean get_back(){
-		return back;}
+		return (buttons & BTN_BACK) != 0;}
 	public boolean get_start(){
-		return start;}
+		return (buttons & BTN_START) != 0;}
 	public boolean get_X(){
-		return xb;}
+		return (buttons & BTN_XBOX) != 0;}
 	public boolean get_a(){
-		return a;}
+		return (buttons & BTN_A) != 0;}
 	public boolean get_b(){
-		return b;}
+		return (buttons & BTN_B) != 0;}
 	public boolean get_x(){
-		return x;}
+		return (buttons & BTN_X) != 0;}
 	public boolean get_y(){
-		return y;}
+		return (buttons & BTN_Y) != 0;}
 	public boolean get_rb(){
-		return rb;}
+		return (buttons & BTN_RB) != 0;}
 	public boolean get_lb(){
-		return lb;}
+		return (buttons & BTN_LB) != 0;}
 	public boolean get_ls(){
-		return ls;}
+		return (buttons & BTN_LS) != 0;}
 	public boolean get_rs(){
-		return rs;}
+		return (buttons & BTN_RS) != 0;}
 	public int get_lt(){
-		return lt;}
+		return lt & 0xFF;}
 	public int get_rt(){
-		return rt;}
+		return rt & 0xFF;}
+	//sticks shifted from signed to 0 - 65535
 	public double get_lx(){
-		return lx;}
+		return lx + 32768;}
 	public double get_ly(){
-		return ly;}
+		return ly + 32768;}
 	public double get_rx(){
-		return rx;}
+		return rx + 32768;}
 	public double get_ry(){
-		return ry;}
+		return ry + 32768;}
 	public int get_id(){
 		return mPlayerNum;
 	}
@@ -0,0 +1,128 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Preallocated single producer / single consumer queue of controller events.
+//The reader thread publishes, the game drains once per frame. Events are
+//copied in and out of the slots, so neither side ever holds a slot.
+//
+//Every slot has a sequence number that is odd while the producer writes it.
+//The consumer copies a slot, checks the sequence did not move, and only then
+//claims it by advancing head with a CAS. That lets the producer also move
+//head (drop oldest) or rewrite the newest slot (coalesce) when the ring is
+//full without ever handing the consumer a torn event.
+class XpadEventRing {
+
+	//what publish() does when the consumer has fallen a whole ring behind
+	static final int OVERFLOW_DROP_OLDEST = 0; //discard the oldest undrained event
+	static final int OVERFLOW_COALESCE = 1; //fold the new state into the newest event
+
+	private final XpadEventMsg[] mSlots;
+	private final AtomicIntegerArray mSeq;
+	private final int mMask;
+
+	private final AtomicLong mHead = new AtomicLong(0); //next event to drain
+	private final AtomicLong mTail = new AtomicLong(0); //next slot to publish into
+	private long mProducerTail = 0; //producer's own copy of mTail
+
+	private volatile int mPolicy = OVERFLOW_DROP_OLDEST;
+	private volatile long mOverflowCount = 0;
+
+	//capacity is rounded up to a power of two
+	XpadEventRing(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		mSlots = new XpadEventMsg[size];
+		for (int i = 0; i < size; i++)
+			mSlots[i] = new XpadEventMsg(null);
+		mSeq = new AtomicIntegerArray(size);
+		mMask = size - 1;
+	}
+
+	void setOverflowPolicy(int policy)
+	{
+		mPolicy = policy;
+	}
+
+	int getOverflowPolicy()
+	{
+		return mPolicy;
+	}
+
+	long getOverflowCount()
+	{
+		return mOverflowCount;
+	}
+
+	int capacity()
+	{
+		return mSlots.length;
+	}
+
+	int size()
+	{
+		return (int) (mTail.get() - mHead.get());
+	}
+
+	//producer side, reader thread only
+	void publish(XpadEventMsg src)
+	{
+		long t = mProducerTail;
+		long h = mHead.get();
+		if (t - h >= mSlots.length)
+		{
+			mOverflowCount++; //only the producer writes this
+			if (mPolicy == OVERFLOW_COALESCE)
+			{
+				int i = (int) ((t - 1) & mMask);
+				mSeq.incrementAndGet(i);
+				short baseline = mSlots[i].prevButtons; //keep edges relative to the older event
+				byte moved = mSlots[i].changedAxes;
+				mSlots[i].copyEvent(src);
+				mSlots[i].prevButtons = baseline;
+				mSlots[i].changedAxes |= moved;
+				mSeq.incrementAndGet(i);
+				//the consumer may still be copying that slot: it can pass its
+				//sequence check before our rewrite and claim the old contents
+				//after it. Unless it's still short of the slot, publish the
+				//new state normally as well, a duplicate beats losing it.
+				if (mHead.get() < t - 1)
+					return;
+			}
+			else
+			{
+				//if this fails the consumer just freed a slot for us
+				mHead.compareAndSet(h, h + 1);
+			}
+		}
+
+		int i = (int) (t & mMask);
+		mSeq.incrementAndGet(i);
+		mSlots[i].copyEvent(src);
+		mSeq.incrementAndGet(i);
+		mProducerTail = t + 1;
+		mTail.lazySet(t + 1);
+	}
+
+	//consumer side, copies the oldest event into 'into'. false when empty.
+	boolean poll(XpadEventMsg into)
+	{
+		for (;;)
+		{
+			long h = mHead.get();
+			if (h >= mTail.get())
+				return false;
+			int i = (int) (h & mMask);
+			int seq = mSeq.get(i);
+			if ((seq & 1) != 0)
+				continue; //producer is mid write
+			into.copyEvent(mSlots[i]);
+			if (mSeq.get(i) != seq)
+				continue; //rewritten under us, copy is torn
+			if (mHead.compareAndSet(h, h + 1))
+				return true;
+			//producer dropped it while we copied, try the next one
+		}
+	}
+}
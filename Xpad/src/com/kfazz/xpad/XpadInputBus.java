@@ -0,0 +1,156 @@
+package com.kfazz.xpad;
+
+//Routes controller events to subscribed listeners. Subscriptions filter by
+//player and by button/axis mask and are resolved per device when a listener
+//subscribes or a device is added, so the reader thread can drop events no one
+//wants before they are queued, and drain() calls listeners directly without
+//looking anything up.
+//
+//subscribe/add/remove may be called from any thread, drain() from one thread
+//at a time (it is the consumer side of every device's event ring).
+public class XpadInputBus {
+
+	public static final int PLAYERS_ALL = -1;
+
+	//spans the whole drain, listeners included
+	static final int TRACE_DRAIN = XpadTrace.event("bus drain");
+	//counter, events a drain handed out
+	static final int TRACE_EVENTS = XpadTrace.event("bus events");
+
+	//player n is bit (1 << n), player numbers start at 1
+	public static int player(int n)
+	{
+		return 1 << n;
+	}
+
+	static final class Subscription {
+		final XpadInputListener listener;
+		final int players, buttons, axes;
+
+		Subscription(XpadInputListener listener, int players, int buttons, int axes)
+		{
+			this.listener = listener;
+			this.players = players;
+			this.buttons = buttons;
+			this.axes = axes;
+		}
+
+		//events that change nothing (heartbeats) go to every subscriber
+		boolean wants(XpadEventMsg msg)
+		{
+			int changed = (msg.buttons ^ msg.prevButtons) & 0xFFFF;
+			if (changed == 0 && msg.changedAxes == 0)
+				return true;
+			return (changed & buttons) != 0 || (msg.changedAxes & axes) != 0;
+		}
+	}
+
+	private static final Subscription[] NONE = new Subscription[0];
+
+	//copy on write so drain() can walk them without locking or iterators
+	private volatile Subscription[] mSubscriptions = NONE;
+	private volatile XpadDevice[] mDevices = new XpadDevice[0];
+
+	private final XpadEventMsg mEvent = new XpadEventMsg(null); //drain()'s scratch event
+
+	//players is a mask of player(n) bits or PLAYERS_ALL, buttons a mask of
+	//XpadState.BTN_* and axes a mask of XpadState.AXIS_*. The listener gets
+	//events in which any of those changed.
+	public synchronized void subscribe(XpadInputListener listener, int players, int buttons, int axes)
+	{
+		Subscription[] subs = new Subscription[mSubscriptions.length + 1];
+		System.arraycopy(mSubscriptions, 0, subs, 0, mSubscriptions.length);
+		subs[subs.length - 1] = new Subscription(listener, players, buttons, axes);
+		mSubscriptions = subs;
+		resolveAll();
+	}
+
+	public synchronized void unsubscribe(XpadInputListener listener)
+	{
+		int n = 0;
+		for (Subscription s : mSubscriptions)
+			if (s.listener != listener)
+				n++;
+		Subscription[] subs = new Subscription[n];
+		n = 0;
+		for (Subscription s : mSubscriptions)
+			if (s.listener != listener)
+				subs[n++] = s;
+		mSubscriptions = subs;
+		resolveAll();
+	}
+
+	public synchronized void addDevice(XpadDevice device)
+	{
+		for (XpadDevice d : mDevices)
+			if (d == device)
+				return;
+		XpadDevice[] devices = new XpadDevice[mDevices.length + 1];
+		System.arraycopy(mDevices, 0, devices, 0, mDevices.length);
+		devices[devices.length - 1] = device;
+		mDevices = devices;
+		resolve(device);
+	}
+
+	public synchronized void removeDevice(XpadDevice device)
+	{
+		int n = 0;
+		for (XpadDevice d : mDevices)
+			if (d != device)
+				n++;
+		XpadDevice[] devices = new XpadDevice[n];
+		n = 0;
+		for (XpadDevice d : mDevices)
+			if (d != device)
+				devices[n++] = d;
+		mDevices = devices;
+		device.setSubscriptions(NONE);
+	}
+
+	private void resolveAll()
+	{
+		for (XpadDevice d : mDevices)
+			resolve(d);
+	}
+
+	//hand the device just the subscriptions for its player
+	private void resolve(XpadDevice device)
+	{
+		int bit = player(device.getPlayerNum());
+		int n = 0;
+		for (Subscription s : mSubscriptions)
+			if ((s.players & bit) != 0)
+				n++;
+		Subscription[] subs = new Subscription[n];
+		n = 0;
+		for (Subscription s : mSubscriptions)
+			if ((s.players & bit) != 0)
+				subs[n++] = s;
+		device.setSubscriptions(subs);
+	}
+
+	//delivers every queued event to the listeners that want it
+	public void drain()
+	{
+		XpadTrace.Ring trace = XpadTrace.ring();
+		trace.begin(TRACE_DRAIN, 0, 0);
+		int n = 0;
+		XpadDevice[] devices = mDevices;
+		for (int i = 0; i < devices.length; i++)
+		{
+			XpadDevice device = devices[i];
+			while (device.pollEvent(mEvent))
+			{
+				n++;
+				XpadLatency.DISPATCH.record(System.nanoTime() - mEvent.timestamp);
+				Subscription[] subs = device.getSubscriptions();
+				for (int j = 0; j < subs.length; j++)
+					if (subs[j].wants(mEvent))
+						subs[j].listener.onXpadMotionEvent(mEvent);
+			}
+		}
+		trace.end(TRACE_DRAIN);
+		if (n > 0)
+			trace.counter(TRACE_EVENTS, n);
+	}
+}
@@ -0,0 +1,8 @@
+package com.kfazz.xpad;
+
+//Receives controller events from an XpadInputBus. Called from
+//XpadInputBus.drain(), on whichever thread drains the bus. msg is reused
+//after the call returns, copy anything you need to keep.
+public interface XpadInputListener {
+	public void onXpadMotionEvent(XpadEventMsg msg);
+}
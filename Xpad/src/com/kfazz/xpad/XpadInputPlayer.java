@@ -0,0 +1,167 @@
+package com.kfazz.xpad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Plays a log written by XpadInputRecorder back as controller events. Call
+//play() once per frame where the game would drain its XpadInputBus and every
+//event that has come due is handed to the listener, exactly as the bus would:
+//with the edges filled in and a timestamp on the System.nanoTime() clock, so
+//the latency stages still mean something. Or pull events one at a time with
+//next() to drive a game loop as fast as it will go.
+//
+//Replayed events have no device, so getDevice() is null.
+public class XpadInputPlayer {
+
+	private final MappedByteBuffer mLog;
+	private double mSpeed = 1;
+
+	//per player state rebuilt from the deltas
+	private final XpadState[] mLast = new XpadState[256];
+	private long mTime = 0; //recorded time of the last record read
+	private boolean mEnded = false;
+
+	//play() bookkeeping
+	private final XpadEventMsg mPending = new XpadEventMsg(null);
+	private boolean mHasPending = false;
+	private long mLogStart = 0, mPlayStart = 0;
+
+	public XpadInputPlayer(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			mLog = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close(); //the mapping stays valid
+		}
+		if (mLog.remaining() < XpadInputRecorder.HEADER || mLog.getInt() != XpadInputRecorder.MAGIC)
+			throw new IOException("not an xpad input log");
+		int version = mLog.getInt();
+		if (version != XpadInputRecorder.VERSION)
+			throw new IOException("unsupported input log version " + version);
+	}
+
+	//1 plays at recorded speed, 2 twice as fast, 0 delivers everything at once
+	public void setSpeed(double speed)
+	{
+		mSpeed = speed;
+	}
+
+	//back to the first record
+	public void rewind()
+	{
+		mLog.position(XpadInputRecorder.HEADER);
+		for (int i = 0; i < mLast.length; i++)
+			mLast[i] = null;
+		mTime = 0;
+		mEnded = false;
+		mHasPending = false;
+		mPlayStart = 0;
+	}
+
+	private long getVarint()
+	{
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = mLog.get();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return (v >>> 1) ^ -(v & 1); //undo zigzag
+	}
+
+	//decodes the next record into 'into', timestamp is the recorded one.
+	//false at the end of the log.
+	public boolean next(XpadEventMsg into)
+	{
+		if (mEnded)
+			return false;
+		try {
+			return decode(into);
+		} catch (BufferUnderflowException e) {
+			mEnded = true; //last record cut short
+			return false;
+		}
+	}
+
+	private boolean decode(XpadEventMsg into)
+	{
+		long time = mTime + getVarint();
+		int player = mLog.get() & 0xFF;
+		int flags = mLog.get() & 0xFF;
+		if (flags == 0)
+		{
+			mEnded = true; //zero fill after a log that wasn't closed
+			return false;
+		}
+
+		XpadState last = mLast[player];
+		if (last == null)
+			last = mLast[player] = new XpadState();
+
+		into.copyFrom(last);
+		into.setPlayer(player);
+		into.prevButtons = last.buttons;
+		into.changedAxes = (byte) (flags >> 1);
+		into.timestamp = time;
+		if ((flags & XpadInputRecorder.F_BUTTONS) != 0)
+			into.buttons = mLog.getShort();
+		if ((flags & (XpadState.AXIS_LT << 1)) != 0)
+			into.lt = mLog.get();
+		if ((flags & (XpadState.AXIS_RT << 1)) != 0)
+			into.rt = mLog.get();
+		if ((flags & (XpadState.AXIS_LX << 1)) != 0)
+			into.lx = (short) (last.lx + getVarint());
+		if ((flags & (XpadState.AXIS_LY << 1)) != 0)
+			into.ly = (short) (last.ly + getVarint());
+		if ((flags & (XpadState.AXIS_RX << 1)) != 0)
+			into.rx = (short) (last.rx + getVarint());
+		if ((flags & (XpadState.AXIS_RY << 1)) != 0)
+			into.ry = (short) (last.ry + getVarint());
+
+		last.copyFrom(into);
+		mTime = time;
+		return true;
+	}
+
+	//hands every event due by 'now' (System.nanoTime()) to the listener,
+	//returns how many. The first call starts the clock.
+	public int play(XpadInputListener listener, long now)
+	{
+		int n = 0;
+		for (;;)
+		{
+			if (!mHasPending)
+			{
+				if (!next(mPending))
+					return n;
+				mHasPending = true;
+				if (mPlayStart == 0)
+				{
+					mPlayStart = now;
+					mLogStart = mPending.timestamp;
+				}
+			}
+			long due = mPlayStart;
+			if (mSpeed > 0)
+				due += (long) ((mPending.timestamp - mLogStart) / mSpeed);
+			if (due > now)
+				return n;
+			mHasPending = false;
+			mPending.timestamp = due;
+			listener.onXpadMotionEvent(mPending);
+			n++;
+		}
+	}
+
+	public boolean isFinished()
+	{
+		return !mHasPending && (mEnded || !mLog.hasRemaining());
+	}
+}
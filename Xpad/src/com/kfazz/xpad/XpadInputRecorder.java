@@ -0,0 +1,166 @@
+package com.kfazz.xpad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+//Records every controller state change to an append-only log that
+//XpadInputPlayer can feed back into a game. It's a bus listener, so it runs
+//on whichever thread drains the bus and costs the reader thread nothing:
+//
+//  bus.subscribe(new XpadInputRecorder(file), XpadInputBus.PLAYERS_ALL,
+//          XpadState.BTN_ALL, XpadState.AXIS_ALL);
+//
+//The log is written through a memory mapping grown CHUNK bytes at a time.
+//Each record is only what changed since the same player's previous record:
+//
+//  varint   timestamp delta from the previous record, zigzag, nanoseconds
+//  byte     player
+//  byte     F_BUTTONS | changed AXIS_* bits << 1
+//  then, for each bit set: buttons (2 bytes), lt, rt (1 byte each),
+//  lx, ly, rx, ry (zigzag varint of the change)
+//
+//so an idle stick costs nothing and a small move costs a byte. Events that
+//change nothing aren't recorded. A zero flags byte marks the end of the log.
+public class XpadInputRecorder implements XpadInputListener {
+
+	private static final String TAG = "XpadInputRecorder";
+
+	static final int MAGIC = 0x5850494e; //"XPIN"
+	static final int VERSION = 1;
+	static final int HEADER = 8;
+	static final int F_BUTTONS = 1;
+	static final int MAX_RECORD = 10 + 1 + 1 + 2 + 1 + 1 + 4 * 3;
+	static final int CHUNK = 1 << 20;
+
+	private final File mFile;
+	private RandomAccessFile mRaf;
+	private FileChannel mChannel;
+	private MappedByteBuffer mMap; //mapped from mMapBase, null once closed
+	private long mMapBase = 0;
+
+	//previous recorded state per player, allocated when a player first shows up
+	private final XpadState[] mLast = new XpadState[256];
+	private long mLastTime = 0;
+	private long mRecords = 0;
+
+	public XpadInputRecorder(File file) throws IOException
+	{
+		mFile = file;
+		mRaf = new RandomAccessFile(file, "rw");
+		mRaf.setLength(0);
+		mChannel = mRaf.getChannel();
+		mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK);
+		mMap.putInt(MAGIC);
+		mMap.putInt(VERSION);
+	}
+
+	static void putVarint(MappedByteBuffer b, long zigzag)
+	{
+		while ((zigzag & ~0x7FL) != 0)
+		{
+			b.put((byte) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		b.put((byte) zigzag);
+	}
+
+	static long zigzag(long v)
+	{
+		return (v << 1) ^ (v >> 63);
+	}
+
+	@Override
+	public void onXpadMotionEvent(XpadEventMsg msg)
+	{
+		if (mMap == null)
+			return;
+		int player = msg.get_id() & 0xFF;
+		XpadState last = mLast[player];
+		if (last == null)
+			last = mLast[player] = new XpadState(); //all zero, like a pad at rest
+
+		int flags = msg.axesChangedSince(last) << 1;
+		if (msg.buttons != last.buttons)
+			flags |= F_BUTTONS;
+		if (flags == 0)
+			return;
+
+		if (mMap.remaining() < MAX_RECORD && !grow())
+			return;
+
+		putVarint(mMap, zigzag(msg.timestamp - mLastTime));
+		mMap.put((byte) player);
+		mMap.put((byte) flags);
+		if ((flags & F_BUTTONS) != 0)
+			mMap.putShort(msg.buttons);
+		if ((flags & (XpadState.AXIS_LT << 1)) != 0)
+			mMap.put(msg.lt);
+		if ((flags & (XpadState.AXIS_RT << 1)) != 0)
+			mMap.put(msg.rt);
+		if ((flags & (XpadState.AXIS_LX << 1)) != 0)
+			putVarint(mMap, zigzag(msg.lx - last.lx));
+		if ((flags & (XpadState.AXIS_LY << 1)) != 0)
+			putVarint(mMap, zigzag(msg.ly - last.ly));
+		if ((flags & (XpadState.AXIS_RX << 1)) != 0)
+			putVarint(mMap, zigzag(msg.rx - last.rx));
+		if ((flags & (XpadState.AXIS_RY << 1)) != 0)
+			putVarint(mMap, zigzag(msg.ry - last.ry));
+
+		last.copyFrom(msg);
+		mLastTime = msg.timestamp;
+		mRecords++;
+	}
+
+	//maps the next CHUNK from where we are, false (and recording stops) on failure
+	private boolean grow()
+	{
+		long base = mMapBase + mMap.position();
+		try {
+			MappedByteBuffer map = mChannel.map(FileChannel.MapMode.READ_WRITE, base, CHUNK);
+			mMap.force();
+			mMap = map;
+			mMapBase = base;
+			return true;
+		} catch (IOException e) {
+			Log.d(TAG, "can't grow " + mFile + ": " + e);
+			close();
+			return false;
+		}
+	}
+
+	//bytes of log written so far
+	public long getLength()
+	{
+		MappedByteBuffer map = mMap;
+		return mMapBase + (map != null ? map.position() : 0);
+	}
+
+	public long getRecords()
+	{
+		return mRecords;
+	}
+
+	//trims the file to what was written; unsubscribe first
+	public void close()
+	{
+		if (mRaf == null)
+			return;
+		long length = mMapBase + (mMap != null ? mMap.position() : 0);
+		try {
+			if (mMap != null)
+				mMap.force();
+			mRaf.setLength(length);
+			mRaf.close();
+		} catch (IOException e) {
+			Log.d(TAG, "closing " + mFile + ": " + e);
+		}
+		mMap = null;
+		mRaf = null;
+		mChannel = null;
+	}
+}
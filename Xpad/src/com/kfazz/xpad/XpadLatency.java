@@ -0,0 +1,33 @@
+package com.kfazz.xpad;
+
+import android.util.Log;
+
+//Input latency per pipeline stage, measured from the moment waitRead()
+//returned the report (XpadEventMsg.getTimestamp(), System.nanoTime() clock).
+public class XpadLatency {
+
+	private static final String TAG = "XpadLatency";
+
+	//report received -> decoded on the reader thread
+	public static final LatencyHistogram DECODE = new LatencyHistogram("decode");
+	//report received -> handed to a listener by XpadInputBus.drain()
+	public static final LatencyHistogram DISPATCH = new LatencyHistogram("dispatch");
+	//oldest unsimulated report -> game step() that applied it
+	public static final LatencyHistogram STEP = new LatencyHistogram("step");
+	//oldest undrawn report -> draw() of the frame showing it
+	public static final LatencyHistogram DRAW = new LatencyHistogram("draw");
+
+	static final LatencyHistogram[] STAGES = { DECODE, DISPATCH, STEP, DRAW };
+
+	public static void reset()
+	{
+		for (LatencyHistogram h : STAGES)
+			h.reset();
+	}
+
+	public static void dump()
+	{
+		for (LatencyHistogram h : STAGES)
+			Log.i(TAG, h.toString());
+	}
+}
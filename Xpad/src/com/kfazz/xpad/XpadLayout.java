@@ -0,0 +1,124 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+
+//Report layout for one supported VID/PID. MainActivity picks the interfaces
+//to claim from it and XpadDevice decodes every input report against it, so
+//supporting another pad that speaks a known protocol is one more TABLE entry.
+//
+//Everything the decoder needs is worked out once here: the header bytes that
+//mark an input report, the offsets of the triggers and sticks, and two 256
+//entry tables that turn the two button bytes into an XpadState.BTN_* mask.
+public final class XpadLayout {
+
+	public final String name;
+	public final int vendorId, productId;
+	public final boolean wireless; //receiver with one controller per interface
+	public final int[] interfaces; //interface index per controller slot
+
+	final int reportLength; //exact length of an input report, 0 for any
+	final byte[] header; //bytes at offset 0 that mark an input report
+	final int buttonOffset; //two bytes of buttons
+	final int ltOffset, rtOffset;
+	final int lxOffset, lyOffset, rxOffset, ryOffset; //signed 16 bit little endian
+
+	//button byte value -> BTN_* bits, for the first and second button byte
+	final short[] buttonsLow = new short[256];
+	final short[] buttonsHigh = new short[256];
+
+	//buttonBits[i] is the BTN_* mask for bit i of the two button bytes
+	//(bit 0-7 first byte, 8-15 second), 0 for an unused bit
+	XpadLayout(String name, int vendorId, int productId, boolean wireless, int[] interfaces,
+			int reportLength, byte[] header, int buttonOffset, int[] buttonBits,
+			int ltOffset, int rtOffset, int lxOffset, int lyOffset, int rxOffset, int ryOffset)
+	{
+		this.name = name;
+		this.vendorId = vendorId;
+		this.productId = productId;
+		this.wireless = wireless;
+		this.interfaces = interfaces;
+		this.reportLength = reportLength;
+		this.header = header;
+		this.buttonOffset = buttonOffset;
+		this.ltOffset = ltOffset;
+		this.rtOffset = rtOffset;
+		this.lxOffset = lxOffset;
+		this.lyOffset = lyOffset;
+		this.rxOffset = rxOffset;
+		this.ryOffset = ryOffset;
+
+		for (int v = 0; v < 256; v++)
+		{
+			int low = 0, high = 0;
+			for (int bit = 0; bit < 8; bit++)
+			{
+				if ((v & (1 << bit)) != 0)
+				{
+					low |= buttonBits[bit];
+					high |= buttonBits[bit + 8];
+				}
+			}
+			buttonsLow[v] = (short) low;
+			buttonsHigh[v] = (short) high;
+		}
+	}
+
+	//true if the report is an input report in this layout
+	boolean isInputReport(ByteBuffer buf, int length)
+	{
+		if (reportLength != 0 && length != reportLength)
+			return false;
+		for (int i = 0; i < header.length; i++)
+			if (buf.get(i) != header[i])
+				return false;
+		return true;
+	}
+
+	/* Xbox 360 input report, wired:
+	 * 0x00 type, 0x01 size (0x14), 0x02-0x03 buttons, 0x04 LT, 0x05 RT,
+	 * 0x06 LX, 0x08 LY, 0x0a RX, 0x0c RY
+	 * Wireless receivers wrap the same report 4 bytes further in. */
+	static final int[] XBOX360_BUTTONS = {
+		XpadState.BTN_D_UP, XpadState.BTN_D_DOWN, XpadState.BTN_D_LEFT, XpadState.BTN_D_RIGHT,
+		XpadState.BTN_START, XpadState.BTN_BACK, XpadState.BTN_LS, XpadState.BTN_RS,
+		XpadState.BTN_LB, XpadState.BTN_RB, XpadState.BTN_XBOX, 0,
+		XpadState.BTN_A, XpadState.BTN_B, XpadState.BTN_X, XpadState.BTN_Y };
+
+	static XpadLayout wired360(int vendorId, int productId, String name)
+	{
+		return new XpadLayout(name, vendorId, productId, false, new int[] { 0 },
+				32, new byte[] { 0x00, 0x14 }, 2, XBOX360_BUTTONS,
+				4, 5, 6, 8, 10, 12);
+	}
+
+	static XpadLayout wireless360(int vendorId, int productId, String name)
+	{
+		return new XpadLayout(name, vendorId, productId, true, new int[] { 0, 2, 4, 6 },
+				0, new byte[] { 0x00, 0x01, 0x00, (byte)0xf0, 0x00, 0x13 }, 6, XBOX360_BUTTONS,
+				8, 9, 10, 12, 14, 16);
+	}
+
+	//keep in sync with res/xml/device_filter.xml
+	static final XpadLayout[] TABLE = {
+		wired360(0x045e, 0x028e, "Microsoft X-Box 360 pad"),
+		wireless360(0x045e, 0x0291, "Xbox 360 Wireless Receiver (XBOX)"),
+		wireless360(0x045e, 0x0719, "Xbox 360 Wireless Receiver"),
+		wired360(0x0738, 0x4716, "Mad Catz Wired Xbox 360 Controller"),
+		wired360(0x0738, 0x4718, "Mad Catz Street Fighter IV FightStick SE"),
+		wired360(0x0738, 0x4726, "Mad Catz Xbox 360 Controller"),
+		wired360(0x0738, 0x4728, "Mad Catz Street Fighter IV FightPad"),
+		wired360(0x0738, 0x4738, "Mad Catz Wired Xbox 360 Controller (SFIV)"),
+		wired360(0x0f0d, 0x000a, "Hori Co. DOA4 FightStick"),
+		wired360(0x0f0d, 0x000d, "Hori Fighting Stick EX2"),
+		wired360(0x0f0d, 0x0016, "Hori Real Arcade Pro.EX"),
+	};
+
+	//null if we don't know how to talk to this device
+	public static XpadLayout find(int vendorId, int productId)
+	{
+		for (XpadLayout l : TABLE)
+			if (l.vendorId == vendorId && l.productId == productId)
+				return l;
+		return null;
+	}
+}
@@ -0,0 +1,74 @@
+package com.kfazz.xpad;
+
+//Runtime counters for one XpadDevice. Every counter has a single writer
+//thread (noted next to it), so updates are a plain volatile increment: no
+//locks, no allocation. Readers take a Snapshot, which can be reused between
+//polls and also works out the report rate since the previous one.
+public class XpadMetrics {
+
+	//reader thread
+	volatile long reports = 0; //completed reads handed to the device
+	volatile long decoded = 0; //input reports decoded into events
+	volatile long suppressed = 0; //duplicate reports dropped before decode
+	volatile long filtered = 0; //events no subscriber wanted
+	volatile long starved = 0; //completions that left epIn with no read queued
+	volatile long unknown = 0; //packets no parser branch recognised
+	volatile long waitMismatches = 0; //requestWait() returned someone else's request
+	volatile int battery = -1; //wireless battery level, -1 until reported
+
+	public static class Snapshot {
+		public long timeNanos;
+		public long reports, decoded, suppressed, filtered, starved, unknown, waitMismatches;
+		public long overflows; //ring overflows, see XpadEventRing
+		public long outputTransfers, outputFailures, outputDropped;
+		public int battery;
+		public int readerMode; //see XpadReader
+		public long wakeups; //reader thread wakeups, shared by a receiver's slots
+		//per second since the previous snapshot into this object
+		public double reportsPerSecond, wakeupsPerSecond;
+
+		public String toString()
+		{
+			return "reports=" + reports + " (" + (int) reportsPerSecond + "/s) decoded=" + decoded
+					+ " suppressed=" + suppressed + " filtered=" + filtered + " starved=" + starved
+					+ " unknown=" + unknown + " waitMismatches=" + waitMismatches
+					+ " overflows=" + overflows + " out=" + outputTransfers
+					+ " outFailed=" + outputFailures + " outDropped=" + outputDropped
+					+ " battery=" + battery + " mode=" + readerMode
+					+ " wakeups=" + wakeups + " (" + (int) wakeupsPerSecond + "/s)";
+		}
+	}
+
+	//fills 'into' from the counters plus the ring and output stats owned by
+	//the device, output and reader may be null before the device is started
+	void snapshot(Snapshot into, XpadEventRing ring, XpadOutput output, XpadReader reader)
+	{
+		long now = System.nanoTime();
+		long reportsNow = reports;
+		long wakeupsNow = reader != null ? reader.getWakeups() : 0;
+		if (into.timeNanos != 0 && now > into.timeNanos)
+		{
+			into.reportsPerSecond = (reportsNow - into.reports) * 1e9 / (now - into.timeNanos);
+			into.wakeupsPerSecond = (wakeupsNow - into.wakeups) * 1e9 / (now - into.timeNanos);
+		}
+		into.timeNanos = now;
+		into.wakeups = wakeupsNow;
+		into.reports = reportsNow;
+		into.decoded = decoded;
+		into.suppressed = suppressed;
+		into.filtered = filtered;
+		into.starved = starved;
+		into.unknown = unknown;
+		into.waitMismatches = waitMismatches;
+		into.battery = battery;
+		into.overflows = ring.getOverflowCount();
+		if (reader != null)
+			into.readerMode = reader.getMode();
+		if (output != null)
+		{
+			into.outputTransfers = output.getTransfers();
+			into.outputFailures = output.getFailures();
+			into.outputDropped = output.getDropped();
+		}
+	}
+}
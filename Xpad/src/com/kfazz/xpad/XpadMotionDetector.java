@@ -0,0 +1,374 @@
+package com.kfazz.xpad;
+
+import java.util.ArrayList;
+
+//Fighting game motions and chords: quarter circles, charge moves, two
+//buttons pressed together. Meant for the lever on the Hori and Mad Catz
+//sticks (it reports as the D-pad), the left stick stands in when the D-pad
+//is neutral so ordinary pads can do motions too.
+//
+//Directions use numpad notation as seen by a player facing right:
+//  7 8 9
+//  4 5 6    so a quarter circle forward is "236" and back is "214"
+//  1 2 3
+//setFacingLeft() mirrors them per player.
+//
+//Every Pattern is compiled into a small state machine per player. Each input
+//change (new direction or newly pressed button) advances every machine by at
+//most a step or two, using only the machine's own state: history is never
+//searched and nothing is allocated. Times come from the event timestamps, so
+//recorded and replayed input behaves the same as live input.
+//
+//All calls belong on the thread draining the bus.
+public class XpadMotionDetector implements XpadInputListener {
+
+	public static final int MAX_PLAYERS = XpadActionMap.MAX_PLAYERS;
+	public static final int MAX_PATTERNS = 32;
+	public static final int HISTORY = 32; //input changes kept per player, power of two
+
+	public static final int DEFAULT_GAP_MS = 200; //longest pause between steps
+	public static final int DEFAULT_CHORD_MS = 50; //buttons of a chord, about 3 frames
+
+	//left stick deflection that counts as a direction, Q15
+	static final int STICK_THRESHOLD = 16384;
+
+	static final int STEP_DIR = 0; //lever moved into one of dirs
+	static final int STEP_CHARGE = 1; //lever held in dirs for time, then left
+	static final int STEP_PRESS = 2; //all of buttons pressed within time of each other
+
+	public static class Pattern {
+		final String name;
+		final ArrayList<int[]> steps = new ArrayList<int[]>(); //kind, dirs, buttons, ms
+		int gapMs = DEFAULT_GAP_MS;
+		int chordMs = DEFAULT_CHORD_MS;
+
+		public Pattern(String name)
+		{
+			this.name = name;
+		}
+
+		//one step per digit, e.g. dirs("236")
+		public Pattern dirs(String numpad)
+		{
+			for (int i = 0; i < numpad.length(); i++)
+				steps.add(new int[] { STEP_DIR, dirMask(numpad.substring(i, i + 1)), 0, 0 });
+			return this;
+		}
+
+		//one step taking any of the digits, e.g. dirAny("36") for a lenient forward
+		public Pattern dirAny(String numpad)
+		{
+			steps.add(new int[] { STEP_DIR, dirMask(numpad), 0, 0 });
+			return this;
+		}
+
+		//lever held in any of the digits for at least ms, e.g. charge("147", 800)
+		//for a back charge. Only allowed as the first step, the charge
+		//completes when the lever leaves and that same input can be the next step.
+		public Pattern charge(String numpad, int ms)
+		{
+			if (!steps.isEmpty())
+				throw new IllegalArgumentException("charge must be the first step of " + name);
+			steps.add(new int[] { STEP_CHARGE, dirMask(numpad), 0, ms });
+			return this;
+		}
+
+		//all of the XpadState.BTN_* buttons pressed, within chord() of each other
+		public Pattern press(int buttons)
+		{
+			if ((buttons & XpadState.BTN_ALL) == 0)
+				throw new IllegalArgumentException("no buttons in " + name);
+			steps.add(new int[] { STEP_PRESS, 0, buttons & XpadState.BTN_ALL, 0 });
+			return this;
+		}
+
+		//longest pause between one step and the next
+		public Pattern gap(int ms)
+		{
+			gapMs = ms;
+			return this;
+		}
+
+		public Pattern chord(int ms)
+		{
+			chordMs = ms;
+			return this;
+		}
+
+		private static int dirMask(String numpad)
+		{
+			int mask = 0;
+			for (int i = 0; i < numpad.length(); i++)
+			{
+				int d = numpad.charAt(i) - '0';
+				if (d < 1 || d > 9)
+					throw new IllegalArgumentException("not a numpad direction: " + numpad);
+				mask |= 1 << d;
+			}
+			return mask;
+		}
+	}
+
+	//patterns flattened into arrays, step j of pattern i is at mFirst[i] + j
+	private final String[] mNames;
+	private final int[] mFirst, mLength;
+	private final int[] mKind, mDirs, mButtons;
+	private final long[] mStepNanos; //charge time or chord window
+	private final long[] mGapNanos; //per pattern
+
+	//machine state, index player * patterns + pattern
+	private final int[] mStep; //steps completed
+	private final long[] mStepTime; //when the last one completed
+	private final int[] mChord; //buttons of the current press step pressed and still held
+	private final long[] mChordTime; //when the first of them was pressed
+	private final long[] mChargeTime; //when the lever entered the charge dirs, 0 if not there
+
+	//per player
+	private final int[] mDir = new int[MAX_PLAYERS]; //current direction, 5 neutral
+	private final int[] mButtonsNow = new int[MAX_PLAYERS];
+	private final boolean[] mFacingLeft = new boolean[MAX_PLAYERS];
+	private final int[] mDone = new int[MAX_PLAYERS]; //pattern bits completed, until taken
+	private final long[] mDoneTime; //per machine, when it last completed
+
+	//ring of input changes, index player * HISTORY + n
+	private final long[] mHistTime = new long[MAX_PLAYERS * HISTORY];
+	private final byte[] mHistDir = new byte[MAX_PLAYERS * HISTORY];
+	private final short[] mHistButtons = new short[MAX_PLAYERS * HISTORY];
+	private final int[] mHistCount = new int[MAX_PLAYERS];
+
+	public XpadMotionDetector(Pattern... patterns)
+	{
+		if (patterns.length > MAX_PATTERNS)
+			throw new IllegalArgumentException("more than " + MAX_PATTERNS + " patterns");
+		int n = patterns.length, total = 0;
+		for (Pattern p : patterns)
+		{
+			if (p.steps.isEmpty())
+				throw new IllegalArgumentException("empty pattern " + p.name);
+			total += p.steps.size();
+		}
+
+		mNames = new String[n];
+		mFirst = new int[n];
+		mLength = new int[n];
+		mGapNanos = new long[n];
+		mKind = new int[total];
+		mDirs = new int[total];
+		mButtons = new int[total];
+		mStepNanos = new long[total];
+		int s = 0;
+		for (int i = 0; i < n; i++)
+		{
+			Pattern p = patterns[i];
+			mNames[i] = p.name;
+			mFirst[i] = s;
+			mLength[i] = p.steps.size();
+			mGapNanos[i] = p.gapMs * 1000000L;
+			for (int[] step : p.steps)
+			{
+				mKind[s] = step[0];
+				mDirs[s] = step[1];
+				mButtons[s] = step[2];
+				mStepNanos[s] = (step[0] == STEP_PRESS ? p.chordMs : step[3]) * 1000000L;
+				s++;
+			}
+		}
+
+		int machines = MAX_PLAYERS * n;
+		mStep = new int[machines];
+		mStepTime = new long[machines];
+		mChord = new int[machines];
+		mChordTime = new long[machines];
+		mChargeTime = new long[machines];
+		mDoneTime = new long[machines];
+		for (int p = 0; p < MAX_PLAYERS; p++)
+			mDir[p] = 5;
+	}
+
+	public int getPatternCount()
+	{
+		return mNames.length;
+	}
+
+	public String getPatternName(int pattern)
+	{
+		return mNames[pattern];
+	}
+
+	//mirror left and right for a player, for when their character turns around
+	public void setFacingLeft(int player, boolean left)
+	{
+		mFacingLeft[player] = left;
+	}
+
+	//patterns the player completed since the last call, bit n for pattern n
+	public int takeMotions(int player)
+	{
+		int done = mDone[player];
+		mDone[player] = 0;
+		return done;
+	}
+
+	//event timestamp of the input that last completed the pattern, 0 if never
+	public long getMotionTime(int player, int pattern)
+	{
+		return mDoneTime[player * mNames.length + pattern];
+	}
+
+	//input changes, newest first: back 0 is the latest. Directions are the
+	//player's, already mirrored if facing left.
+	public int getHistoryCount(int player){
+		return Math.min(mHistCount[player], HISTORY);}
+	public long getHistoryTime(int player, int back){
+		return mHistTime[histIndex(player, back)];}
+	public int getHistoryDirection(int player, int back){
+		return mHistDir[histIndex(player, back)];}
+	public int getHistoryButtons(int player, int back){
+		return mHistButtons[histIndex(player, back)] & 0xFFFF;}
+
+	private int histIndex(int player, int back)
+	{
+		return player * HISTORY + ((mHistCount[player] - 1 - back) & (HISTORY - 1));
+	}
+
+	//numpad direction of the lever, or the left stick when the lever is neutral
+	private int direction(XpadState s, boolean facingLeft)
+	{
+		int b = s.buttons;
+		int x = ((b & XpadState.BTN_D_RIGHT) != 0 ? 1 : 0) - ((b & XpadState.BTN_D_LEFT) != 0 ? 1 : 0);
+		int y = ((b & XpadState.BTN_D_UP) != 0 ? 1 : 0) - ((b & XpadState.BTN_D_DOWN) != 0 ? 1 : 0);
+		if ((b & XpadState.BTN_DPAD) == 0)
+		{
+			x = s.lx >= STICK_THRESHOLD ? 1 : s.lx <= -STICK_THRESHOLD ? -1 : 0;
+			y = s.ly >= STICK_THRESHOLD ? 1 : s.ly <= -STICK_THRESHOLD ? -1 : 0;
+		}
+		if (facingLeft)
+			x = -x;
+		return 5 + x + 3 * y;
+	}
+
+	@Override
+	public void onXpadMotionEvent(XpadEventMsg msg)
+	{
+		int p = msg.get_id();
+		if (p < 0 || p >= MAX_PLAYERS)
+			return;
+		int dir = direction(msg, mFacingLeft[p]);
+		int buttons = msg.buttons & XpadState.BTN_ALL & ~XpadState.BTN_DPAD;
+		int pressed = buttons & ~mButtonsNow[p];
+		boolean moved = dir != mDir[p];
+		if (!moved && buttons == mButtonsNow[p])
+			return; //sticks moving inside a direction, triggers
+		mDir[p] = dir;
+		mButtonsNow[p] = buttons;
+
+		long t = msg.getTimestamp();
+		int h = p * HISTORY + (mHistCount[p] & (HISTORY - 1));
+		mHistTime[h] = t;
+		mHistDir[h] = (byte) dir;
+		mHistButtons[h] = (short) buttons;
+		mHistCount[p]++;
+
+		int n = mNames.length;
+		for (int i = 0; i < n; i++)
+			if (advance(p * n + i, i, dir, moved, buttons, pressed, t))
+			{
+				mDone[p] |= 1 << i;
+				mDoneTime[p * n + i] = t;
+			}
+	}
+
+	//feeds one input change to a machine, true when it completes the pattern
+	private boolean advance(int m, int pattern, int dir, boolean moved, int held, int pressed, long t)
+	{
+		int first = mFirst[pattern];
+		int dirBit = 1 << dir;
+
+		//a charge is timed whatever step the machine is at, so a charge
+		//started during a failed attempt still counts
+		if (mKind[first] == STEP_CHARGE && moved)
+		{
+			boolean in = (mDirs[first] & dirBit) != 0;
+			if (in && mChargeTime[m] == 0)
+				mChargeTime[m] = t;
+			else if (!in && mChargeTime[m] != 0)
+			{
+				boolean charged = t - mChargeTime[m] >= mStepNanos[first];
+				mChargeTime[m] = 0;
+				if (charged)
+				{
+					reset(m);
+					mStep[m] = 1;
+					mStepTime[m] = t;
+					if (mLength[pattern] == 1)
+						return complete(m);
+					//the release may also be the next step, fall through
+				}
+			}
+		}
+
+		int s = mStep[m];
+		if (s > 0 && t - mStepTime[m] > mGapNanos[pattern])
+		{
+			reset(m);
+			s = 0;
+		}
+		int step = first + s;
+
+		switch (mKind[step]) {
+		case STEP_DIR:
+			if (moved && (mDirs[step] & dirBit) != 0)
+			{
+				mStep[m] = s + 1;
+				mStepTime[m] = t;
+				return s + 1 == mLength[pattern] ? complete(m) : false;
+			}
+			break;
+		case STEP_PRESS:
+			mChord[m] &= held; //a chord is pressed together, not in turn
+			if ((pressed & mButtons[step]) != 0)
+			{
+				if (mChord[m] == 0 || t - mChordTime[m] > mStepNanos[step])
+				{
+					mChord[m] = 0;
+					mChordTime[m] = t;
+				}
+				mChord[m] |= pressed & mButtons[step];
+				if (mChord[m] == mButtons[step])
+				{
+					mChord[m] = 0;
+					mStep[m] = s + 1;
+					mStepTime[m] = t;
+					if (s + 1 == mLength[pattern])
+						return complete(m);
+				}
+				return false;
+			}
+			break;
+		default: //STEP_CHARGE, handled above
+			return false;
+		}
+
+		//input that doesn't continue the motion may start it over
+		if (s > 0 && mKind[first] == STEP_DIR && moved && (mDirs[first] & dirBit) != 0)
+		{
+			reset(m);
+			mStep[m] = 1;
+			mStepTime[m] = t;
+			return mLength[pattern] == 1 ? complete(m) : false;
+		}
+		return false;
+	}
+
+	private boolean complete(int m)
+	{
+		reset(m);
+		return true;
+	}
+
+	private void reset(int m)
+	{
+		mStep[m] = 0;
+		mChord[m] = 0;
+	}
+}
@@ -0,0 +1,242 @@
+package com.kfazz.xpad;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import android.util.Log;
+
+//Output commands for one controller, sent by a writer thread of its own so
+//no caller ever waits on a bulk transfer. LED and power commands go out in
+//the order they were queued. Rumble is a single latest-wins value: setting it
+//twice before the writer gets to it only sends the second one. Rumble
+//effects are mixed by an XpadRumble that the writer ticks while any are
+//playing, and direct rumble goes through the same mix so neither one
+//switches off the motors under the other.
+public class XpadOutput implements Runnable {
+
+	private static final String TAG = "XpadOutput";
+
+	//a: slot, b: packet length. Spans the transfer.
+	static final int TRACE_WRITE = XpadTrace.event("output write");
+
+	static final int QUEUE_SIZE = 16; //ordered commands waiting to be sent
+	static final int MAX_PACKET = 12;
+	static final int TIMEOUT_MS = 500;
+
+	private final XpadTransport mTransport;
+	private final int mSlot;
+	private final String mName;
+
+	//ordered commands, guarded by this
+	private final byte[][] mQueue = new byte[QUEUE_SIZE][MAX_PACKET];
+	private final int[] mQueueLen = new int[QUEUE_SIZE];
+	private int mQueueHead = 0, mQueueCount = 0;
+
+	//rumble packet with the motor bytes filled in by the writer, null if this
+	//controller can't rumble
+	private final byte[] mRumbleTemplate;
+	private final int mRumbleLeft, mRumbleRight;
+	//(left << 8 | right) | RUMBLE_PENDING, swapped out whole by the writer
+	private static final int RUMBLE_PENDING = 1 << 16;
+	private final AtomicInteger mRumble = new AtomicInteger(0);
+
+	private final XpadRumble mEffects = new XpadRumble();
+
+	private final byte[] mSend = new byte[MAX_PACKET]; //writer's copy of the packet in flight
+
+	private volatile boolean running = false;
+	private volatile Thread mThread;
+
+	//stats, each written by one thread only
+	private volatile long mTransfers = 0; //writer
+	private volatile long mFailures = 0; //writer
+	private volatile long mLastLatencyNanos = 0; //writer
+	private volatile long mMaxLatencyNanos = 0; //writer
+	private volatile long mTotalLatencyNanos = 0; //writer
+	private volatile int mMaxQueueDepth = 0; //guarded by this
+	private volatile long mDropped = 0; //guarded by this
+	private final AtomicInteger mCoalesced = new AtomicInteger(0);
+
+	XpadOutput(XpadTransport transport, int slot, String name,
+			byte[] rumbleTemplate, int leftOffset, int rightOffset)
+	{
+		mTransport = transport;
+		mSlot = slot;
+		mName = name;
+		mRumbleTemplate = rumbleTemplate;
+		mRumbleLeft = leftOffset;
+		mRumbleRight = rightOffset;
+	}
+
+	void start()
+	{
+		running = true;
+		Thread thread = new Thread(this, mName + " writer");
+		mThread = thread;
+		thread.start();
+	}
+
+	//anything already queued is still sent before the writer exits
+	void stop()
+	{
+		running = false;
+		wake();
+	}
+
+	//waits up to 'ms' for the writer thread to exit after stop()
+	void join(long ms)
+	{
+		Thread t = mThread;
+		if (t == null)
+			return;
+		try {
+			t.join(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void wake()
+	{
+		Thread t = mThread;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	//queue an ordered command, copied so the caller may reuse 'bytes'
+	void send(byte[] bytes)
+	{
+		synchronized (this)
+		{
+			if (mQueueCount == QUEUE_SIZE || bytes.length > MAX_PACKET)
+			{
+				mDropped++;
+				return;
+			}
+			int i = (mQueueHead + mQueueCount) % QUEUE_SIZE;
+			System.arraycopy(bytes, 0, mQueue[i], 0, bytes.length);
+			mQueueLen[i] = bytes.length;
+			mQueueCount++;
+			if (mQueueCount > mMaxQueueDepth)
+				mMaxQueueDepth = mQueueCount;
+		}
+		wake();
+	}
+
+	//latest wins, never blocks
+	void rumble(byte left, byte right)
+	{
+		if (mRumbleTemplate == null)
+			return;
+		int old = mRumble.getAndSet(RUMBLE_PENDING | ((left & 0xFF) << 8) | (right & 0xFF));
+		if ((old & RUMBLE_PENDING) != 0)
+			mCoalesced.incrementAndGet();
+		wake();
+	}
+
+	//queue a rumble effect, see XpadRumble.play()
+	boolean playEffect(int left, int right, int durationMs, int attackMs, int releaseMs, int priority)
+	{
+		if (mRumbleTemplate == null)
+			return false;
+		boolean played = mEffects.play(left, right, durationMs, attackMs, releaseMs, priority);
+		wake();
+		return played;
+	}
+
+	public XpadRumble getEffects()
+	{
+		return mEffects;
+	}
+
+	private int rumblePacket(int left, int right)
+	{
+		System.arraycopy(mRumbleTemplate, 0, mSend, 0, mRumbleTemplate.length);
+		mSend[mRumbleLeft] = (byte) left;
+		mSend[mRumbleRight] = (byte) right;
+		return mRumbleTemplate.length;
+	}
+
+	//next packet into mSend, ordered commands first, then the rumble mix if a
+	//direct rumble changed it or a tick is due. 0 if there's nothing to send.
+	private int take()
+	{
+		synchronized (this)
+		{
+			if (mQueueCount > 0)
+			{
+				int len = mQueueLen[mQueueHead];
+				System.arraycopy(mQueue[mQueueHead], 0, mSend, 0, len);
+				mQueueHead = (mQueueHead + 1) % QUEUE_SIZE;
+				mQueueCount--;
+				return len;
+			}
+		}
+		if (mRumbleTemplate == null)
+			return 0;
+		long now = System.nanoTime();
+		int r = mRumble.getAndSet(0);
+		if ((r & RUMBLE_PENDING) != 0)
+			mEffects.hold((r >> 8) & 0xFF, r & 0xFF, now);
+		if (mEffects.tick(now))
+			return rumblePacket(mEffects.getLeft(), mEffects.getRight());
+		return 0;
+	}
+
+	@Override
+	public void run()
+	{
+		XpadTrace.Ring trace = XpadTrace.ring();
+		for (;;)
+		{
+			int len = take();
+			if (len == 0)
+			{
+				if (!running)
+					break;
+				long wait = mEffects.nanosUntilTick(System.nanoTime());
+				if (wait < 0)
+					LockSupport.park(this); //nothing playing, sleep until woken
+				else if (wait > 0)
+					LockSupport.parkNanos(this, wait);
+				continue;
+			}
+
+			trace.begin(TRACE_WRITE, mSlot, len);
+			long start = System.nanoTime();
+			int sent = mTransport.write(mSlot, mSend, len, TIMEOUT_MS);
+			long latency = System.nanoTime() - start;
+			trace.end(TRACE_WRITE);
+
+			mTransfers++;
+			if (sent < 0)
+				mFailures++;
+			mLastLatencyNanos = latency;
+			mTotalLatencyNanos += latency;
+			if (latency > mMaxLatencyNanos)
+				mMaxLatencyNanos = latency;
+		}
+		Log.d(TAG, mName + "'s writer thread dying.");
+		mThread = null;
+	}
+
+	public synchronized int getQueueDepth(){
+		return mQueueCount;}
+	public int getMaxQueueDepth(){
+		return mMaxQueueDepth;}
+	public long getDropped(){
+		return mDropped;}
+	public int getCoalescedRumbles(){
+		return mCoalesced.get();}
+	public long getTransfers(){
+		return mTransfers;}
+	public long getFailures(){
+		return mFailures;}
+	public long getLastLatencyNanos(){
+		return mLastLatencyNanos;}
+	public long getMaxLatencyNanos(){
+		return mMaxLatencyNanos;}
+	public long getAverageLatencyNanos(){
+		long n = mTransfers;
+		return n == 0 ? 0 : mTotalLatencyNanos / n;}
+}
@@ -0,0 +1,272 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.Process;
+import android.util.Log;
+
+//Reader thread for one transport, normally a usb device connection. A wired
+//pad has a single slot, a wireless dongle has one slot per controller
+//interface, all of them serviced through the same waitRead() loop.
+//
+//The mode trades latency for wakeups and can be changed while running, the
+//thread picks it up on its next pass through the loop:
+// MODE_LOW_LATENCY - raised priority, never sleeps, retries waitRead() at once
+// MODE_BALANCED    - default priority, short back off after a stray completion
+// MODE_POWER_SAVE  - background priority; after a report it sleeps for
+//                    BATCH_MS and then drains everything the queued reads
+//                    collected meanwhile, so it wakes at most ~1000/BATCH_MS
+//                    times a second however fast the pad reports
+class XpadReader implements Runnable {
+
+	private static final String TAG = "XpadReader";
+
+	static final int MODE_LOW_LATENCY = 0;
+	static final int MODE_BALANCED = 1;
+	static final int MODE_POWER_SAVE = 2;
+	static final int NUM_MODES = 3;
+
+	static final int[] MODE_PRIORITY = { Process.THREAD_PRIORITY_URGENT_DISPLAY,
+		Process.THREAD_PRIORITY_DEFAULT, Process.THREAD_PRIORITY_BACKGROUND };
+	//sleep after waitRead() returns something that isn't ours, 0 for none
+	static final int[] MODE_MISMATCH_MS = { 0, 2, 20 };
+
+	static final int BATCH_MS = 16;
+	//longest wait for each slot's writer before closing the transport
+	static final long WRITER_DRAIN_MS = 2 * XpadOutput.TIMEOUT_MS;
+	//a waitRead() that returns quicker than this found its read already
+	//complete, so it didn't cost a wakeup
+	static final long BLOCKED_NANOS = 200000;
+
+	//a: slot, b: nanos spent in waitRead(). Spans the decode and re-queue.
+	static final int TRACE_REPORT = XpadTrace.event("reader report");
+	//a: what waitRead() returned
+	static final int TRACE_MISMATCH = XpadTrace.event("reader mismatch");
+
+	private volatile int mMode = MODE_BALANCED;
+	//wakeups per mode (reader thread) and time spent in each mode (guarded by this)
+	private final AtomicLongArray mWakeups = new AtomicLongArray(NUM_MODES);
+	private final long[] mModeNanos = new long[NUM_MODES];
+	private long mModeSince = System.nanoTime();
+
+	private final XpadTransport mTransport;
+	private final String mName;
+
+	//controllers fed by this reader, fixed once the thread is started
+	private final ArrayList<XpadDevice> mSlots = new ArrayList<XpadDevice>();
+
+	//for controlling the reader thread
+	private volatile boolean running = false;
+
+	XpadReader(XpadTransport transport, String name)
+	{
+		mTransport = transport;
+		mName = name;
+	}
+
+	//must be called before start()
+	void addSlot(XpadDevice slot)
+	{
+		mSlots.add(slot);
+	}
+
+	void start()
+	{
+		running = true;
+		Thread thread = new Thread(this, mName);
+		thread.start();
+	}
+
+	//ends the thread at its next wakeup, called once the last slot stopped
+	void stop()
+	{
+		running = false;
+	}
+
+	synchronized void setMode(int mode)
+	{
+		if (mode < 0 || mode >= NUM_MODES || mode == mMode)
+			return;
+		long now = System.nanoTime();
+		mModeNanos[mMode] += now - mModeSince;
+		mModeSince = now;
+		mMode = mode;
+	}
+
+	int getMode()
+	{
+		return mMode;
+	}
+
+	//times the thread woke up, blocked waitRead() returns plus sleeps
+	long getWakeups()
+	{
+		long n = 0;
+		for (int m = 0; m < NUM_MODES; m++)
+			n += mWakeups.get(m);
+		return n;
+	}
+
+	//measured wakeups per second over all the time spent in 'mode'
+	synchronized double getWakeupRate(int mode)
+	{
+		long nanos = mModeNanos[mode];
+		if (mode == mMode)
+			nanos += System.nanoTime() - mModeSince;
+		return nanos <= 0 ? 0 : mWakeups.get(mode) * 1e9 / nanos;
+	}
+
+	private void sleep(int ms, int mode)
+	{
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Log.d(TAG, "Thread Interrupted.");
+		}
+		mWakeups.incrementAndGet(mode);
+	}
+
+	boolean anySlotAlive()
+	{
+		for (XpadDevice slot : mSlots)
+			if (slot.isAlive())
+				return true;
+		return false;
+	}
+
+	//queues up to 'want' of the idle reads from..to, returns how many
+	private int fill(int from, int to, int want, ByteBuffer[] buffers, int[] lengths,
+			boolean[] queued)
+	{
+		int n = 0;
+		for (int i = from; i < to && n < want; i++)
+		{
+			if (queued[i])
+				continue;
+			buffers[i].clear();
+			if (mTransport.queueRead(i, lengths[i]))
+			{
+				queued[i] = true;
+				n++;
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public void run()
+	{
+		int numSlots = mSlots.size();
+		for (XpadDevice slot : mSlots)
+			slot.onReaderStarted();
+
+		//every slot keeps a ring of reads queued on its input pipe so it still
+		//has reads outstanding while we parse the one that just completed.
+		//A slot with no controller attached only keeps one of them queued.
+		int total = 0;
+		for (XpadDevice slot : mSlots)
+			total += slot.getPipelineDepth();
+
+		ByteBuffer[] buffers = new ByteBuffer[total];
+		int[] lengths = new int[total];
+		int[] owner = new int[total];
+		boolean[] queued = new boolean[total];
+		int[] first = new int[numSlots]; //slot's reads are first[s] up to first[s+1]
+		int[] outstanding = new int[numSlots];
+
+		int k = 0;
+		for (int s = 0; s < numSlots; s++)
+		{
+			XpadDevice slot = mSlots.get(s);
+			first[s] = k;
+			int bufferDataLength = mTransport.getMaxPacketSize(slot.getTransportSlot());
+			Log.d(TAG, mName + " slot " + s + " Max Packet size:" + bufferDataLength
+					+ " pipeline depth:" + slot.getPipelineDepth());
+			for (int i = 0; i < slot.getPipelineDepth(); i++, k++)
+			{
+				buffers[k] = ByteBuffer.allocateDirect(bufferDataLength);
+				buffers[k].order(ByteOrder.LITTLE_ENDIAN); //stick axes are little endian
+				lengths[k] = bufferDataLength;
+				owner[k] = s;
+				mTransport.openRead(k, slot.getTransportSlot(), buffers[k]);
+			}
+			outstanding[s] = fill(k - slot.getPipelineDepth(), k, slot.getQueuedReads(),
+					buffers, lengths, queued);
+		}
+
+		XpadTrace.Ring trace = XpadTrace.ring();
+		int priority = Integer.MIN_VALUE;
+		do
+		{
+			int mode = mMode;
+			if (MODE_PRIORITY[mode] != priority)
+			{
+				priority = MODE_PRIORITY[mode];
+				Process.setThreadPriority(priority);
+			}
+
+			long waitStart = System.nanoTime();
+			k = mTransport.waitRead();
+			long now = System.nanoTime(); //report timestamp for latency tracking
+			boolean blocked = now - waitStart > BLOCKED_NANOS;
+			if (blocked)
+				mWakeups.incrementAndGet(mode);
+
+			if (k == XpadTransport.WAIT_CLOSED)
+				break; //replay ran out
+			if (k >= 0)
+			{
+				int s = owner[k];
+				XpadDevice slot = mSlots.get(s);
+				trace.begin(TRACE_REPORT, s, now - waitStart);
+				queued[k] = false;
+				outstanding[s]--;
+				if (outstanding[s] == 0 && slot.isConnected())
+					slot.metrics().starved++; //only this thread writes it
+
+				//decode in place, the slot's other reads stay queued meanwhile
+				ByteBuffer buffer = buffers[k];
+				if (slot.isAlive())
+					slot.onReport(buffer, buffer.remaining(), now);
+
+				//re-queue, topping the ring up if a controller just arrived
+				if (slot.isAlive())
+				{
+					int end = s + 1 < numSlots ? first[s + 1] : total;
+					outstanding[s] += fill(first[s], end, slot.getQueuedReads() - outstanding[s],
+							buffers, lengths, queued);
+				}
+
+				trace.end(TRACE_REPORT);
+
+				//first report of a batch, let the rest pile up in the queued reads
+				if (mode == MODE_POWER_SAVE && blocked)
+					sleep(BATCH_MS, mode);
+			}
+			else
+			{
+				trace.instant(TRACE_MISMATCH, k, 0);
+				for (int s = 0; s < numSlots; s++)
+					mSlots.get(s).metrics().waitMismatches++;
+				if (MODE_MISMATCH_MS[mode] > 0)
+					sleep(MODE_MISMATCH_MS[mode], mode);
+			}
+		} while (running && anySlotAlive());
+
+		Log.d(TAG, mName + "'s Reader thread dying.");
+		mTransport.closeReads();
+		if (!anySlotAlive())
+		{
+			//every slot was stopped, let the writers send what they still had
+			//queued (a power down, say) before the connection goes
+			for (XpadDevice slot : mSlots)
+				slot.awaitOutput(WRITER_DRAIN_MS);
+			mTransport.close();
+		}
+		running = false;
+		return;
+	}
+}
@@ -0,0 +1,264 @@
+package com.kfazz.xpad;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+//XpadTransport that plays back a report stream written by XpadCaptureTransport
+//instead of talking to hardware, so the reader, decoder and bus can be soaked
+//on any JVM. Reports are delivered at their recorded spacing divided by
+//'speed': 1 is real time, 8 is eight times faster, 0 is as fast as the reader
+//takes them. A report for a slot with no read queued is dropped and counted
+//as an overrun, like a pad whose host stopped polling it.
+//
+//Writes are not sent anywhere, they're kept so a test can check which LED,
+//rumble and power commands the driver produced.
+//
+//File format, big endian:
+//  int MAGIC, int VERSION, int slot count, int max packet size per slot
+//  then per report: long nanos since capture start, byte slot, short length,
+//  length bytes
+public class XpadReplayTransport implements XpadTransport {
+
+	static final int MAGIC = 0x58504452; //"XPDR"
+	static final int VERSION = 1;
+	static final int RECORD_HEADER = 8 + 1 + 2;
+
+	//one captured output command
+	public static final class Write {
+		public final int slot;
+		public final long nanos; //since playback started
+		public final byte[] data;
+
+		Write(int slot, long nanos, byte[] data)
+		{
+			this.slot = slot;
+			this.nanos = nanos;
+			this.data = data;
+		}
+	}
+
+	private final ByteBuffer mData; //whole file, position is the next report
+	private final int mRecordsStart;
+	private final int[] mMaxPacket;
+	private final double mSpeed;
+	private final boolean mLoop;
+
+	//reader thread only
+	private ByteBuffer[] mBuffers = new ByteBuffer[0];
+	private int[] mReadSlot = new int[0];
+	private long[] mQueuedAt = new long[0]; //queue order of a pending read, 0 if idle
+	private long mQueueCount = 0;
+	private long mStart = 0; //nanoTime the first report was asked for
+	private long mLoopBase = 0; //recorded time of the current pass's start
+	private long mLastNanos = 0;
+
+	private volatile boolean mClosed = false;
+	private volatile boolean mFinished = false;
+	private volatile long mReports = 0, mOverruns = 0, mLoops = 0;
+
+	private final ArrayList<Write> mWrites = new ArrayList<Write>(); //guarded by itself
+
+	public XpadReplayTransport(File file, double speed, boolean loop) throws IOException
+	{
+		this(new FileInputStream(file), speed, loop);
+	}
+
+	//reads the whole stream up front and closes it
+	public XpadReplayTransport(InputStream in, double speed, boolean loop) throws IOException
+	{
+		byte[] bytes = readAll(in);
+		mData = ByteBuffer.wrap(bytes);
+		if (bytes.length < 12 || mData.getInt() != MAGIC)
+			throw new IOException("not an xpad capture");
+		int version = mData.getInt();
+		if (version != VERSION)
+			throw new IOException("unsupported capture version " + version);
+		int slots = mData.getInt();
+		if (slots <= 0 || mData.remaining() < slots * 4)
+			throw new IOException("bad slot count " + slots);
+		mMaxPacket = new int[slots];
+		for (int i = 0; i < slots; i++)
+			mMaxPacket[i] = mData.getInt();
+		mRecordsStart = mData.position();
+		mSpeed = speed;
+		mLoop = loop;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int n;
+			while ((n = in.read(chunk)) > 0)
+				out.write(chunk, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getSlotCount()
+	{
+		return mMaxPacket.length;
+	}
+
+	public int getMaxPacketSize(int slot)
+	{
+		return mMaxPacket[slot];
+	}
+
+	public boolean openRead(int id, int slot, ByteBuffer buffer)
+	{
+		if (id >= mBuffers.length)
+		{
+			ByteBuffer[] buffers = new ByteBuffer[id + 1];
+			int[] readSlot = new int[id + 1];
+			long[] queuedAt = new long[id + 1];
+			System.arraycopy(mBuffers, 0, buffers, 0, mBuffers.length);
+			System.arraycopy(mReadSlot, 0, readSlot, 0, mReadSlot.length);
+			System.arraycopy(mQueuedAt, 0, queuedAt, 0, mQueuedAt.length);
+			mBuffers = buffers;
+			mReadSlot = readSlot;
+			mQueuedAt = queuedAt;
+		}
+		mBuffers[id] = buffer;
+		mReadSlot[id] = slot;
+		return true;
+	}
+
+	public boolean queueRead(int id, int length)
+	{
+		if (mClosed)
+			return false;
+		mQueuedAt[id] = ++mQueueCount;
+		return true;
+	}
+
+	//oldest read queued for 'slot', -1 if none
+	private int takeRead(int slot)
+	{
+		int id = -1;
+		for (int i = 0; i < mQueuedAt.length; i++)
+			if (mQueuedAt[i] != 0 && mReadSlot[i] == slot && (id < 0 || mQueuedAt[i] < mQueuedAt[id]))
+				id = i;
+		if (id >= 0)
+			mQueuedAt[id] = 0;
+		return id;
+	}
+
+	public int waitRead()
+	{
+		if (mStart == 0)
+			mStart = System.nanoTime();
+		for (;;)
+		{
+			if (mClosed)
+				return WAIT_CLOSED;
+			if (mData.remaining() < RECORD_HEADER)
+			{
+				if (!mLoop || mLastNanos == 0)
+				{
+					mFinished = true;
+					return WAIT_CLOSED;
+				}
+				mLoopBase += mLastNanos;
+				mLastNanos = 0;
+				mData.position(mRecordsStart);
+				mLoops++;
+				continue;
+			}
+
+			long when = mData.getLong();
+			int slot = mData.get() & 0xFF;
+			int length = mData.getShort() & 0xFFFF;
+			int body = mData.position();
+			if (length > mData.remaining())
+			{
+				mData.position(mData.limit()); //truncated capture, stop here
+				continue;
+			}
+			mData.position(body + length);
+			mLastNanos = when;
+
+			if (mSpeed > 0)
+			{
+				long due = mStart + (long) ((mLoopBase + when) / mSpeed);
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0 && !mClosed)
+					LockSupport.parkNanos(this, wait);
+			}
+
+			int id = slot < mMaxPacket.length ? takeRead(slot) : -1;
+			if (id < 0)
+			{
+				mOverruns++;
+				continue;
+			}
+			ByteBuffer buffer = mBuffers[id];
+			buffer.clear();
+			buffer.put(mData.array(), body, Math.min(length, buffer.remaining()));
+			buffer.flip();
+			mReports++;
+			return id;
+		}
+	}
+
+	public void closeReads()
+	{
+		mClosed = true;
+	}
+
+	public void close()
+	{
+	}
+
+	public int write(int slot, byte[] data, int length, int timeoutMs)
+	{
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+		long start = mStart;
+		synchronized (mWrites)
+		{
+			mWrites.add(new Write(slot, start == 0 ? 0 : System.nanoTime() - start, copy));
+		}
+		return length;
+	}
+
+	//every write so far, oldest first
+	public List<Write> getWrites()
+	{
+		synchronized (mWrites)
+		{
+			return new ArrayList<Write>(mWrites);
+		}
+	}
+
+	public void clearWrites()
+	{
+		synchronized (mWrites)
+		{
+			mWrites.clear();
+		}
+	}
+
+	//the end of the capture was reached without looping
+	public boolean isFinished()
+	{
+		return mFinished;
+	}
+
+	public long getReports(){
+		return mReports;}
+	public long getOverruns(){
+		return mOverruns;}
+	public long getLoops(){
+		return mLoops;}
+}
@@ -0,0 +1,174 @@
+package com.kfazz.xpad;
+
+//Rumble effect mixer for one controller. Games play() short effects, the
+//output writer calls tick() once per output tick and sends at most one motor
+//update when the mix changed, so a burst of hits costs a bounded number of
+//transfers. Effects live in fixed slots, nothing is allocated per effect.
+//
+//Each effect has a strength per motor, a duration and a linear attack and
+//release envelope. Only effects at the highest active priority are mixed
+//(summed and clamped), so an important effect ducks the background ones.
+//
+//Direct rumble (XpadOutput.rumble()) is mixed in too, as a held level each
+//motor stays at until it's changed: the motors get whichever is stronger,
+//the held level or the effects. Every motor update goes through tick(), so
+//the levels it last returned are the ones actually on the motors.
+public class XpadRumble {
+
+	static final int MAX_EFFECTS = 8;
+	static final long TICK_NANOS = 10 * 1000000L; //output tick, 100 motor updates/s at most
+
+	//effect slots, guarded by this
+	private final int[] mLeft = new int[MAX_EFFECTS];
+	private final int[] mRight = new int[MAX_EFFECTS];
+	private final int[] mPriority = new int[MAX_EFFECTS];
+	private final long[] mStart = new long[MAX_EFFECTS];
+	private final long[] mDuration = new long[MAX_EFFECTS];
+	private final long[] mAttack = new long[MAX_EFFECTS];
+	private final long[] mRelease = new long[MAX_EFFECTS];
+	private final boolean[] mActive = new boolean[MAX_EFFECTS];
+	private int mNumActive = 0;
+
+	//writer side, held direct rumble and the motor levels last returned by tick()
+	private int mHeldLeft = 0, mHeldRight = 0;
+	private int mSentLeft = 0, mSentRight = 0;
+	private long mNextTick = System.nanoTime();
+
+	private volatile long mPlayed = 0, mEvicted = 0, mUpdates = 0;
+
+	//strength 0-255 per motor. If every slot is busy the effect replaces the
+	//one with the lowest priority that ends soonest, or is dropped if they all
+	//outrank it. Returns false if it was dropped.
+	public synchronized boolean play(int left, int right, int durationMs,
+			int attackMs, int releaseMs, int priority)
+	{
+		long now = System.nanoTime();
+		int slot = -1;
+		for (int i = 0; i < MAX_EFFECTS && slot < 0; i++)
+			if (!mActive[i])
+				slot = i;
+		if (slot < 0)
+		{
+			for (int i = 0; i < MAX_EFFECTS; i++)
+				if (mPriority[i] <= priority && (slot < 0 || mPriority[i] < mPriority[slot]
+						|| (mPriority[i] == mPriority[slot]
+							&& mStart[i] + mDuration[i] < mStart[slot] + mDuration[slot])))
+					slot = i;
+			if (slot < 0)
+				return false;
+			mEvicted++;
+		}
+		else
+			mNumActive++;
+
+		mLeft[slot] = clamp(left);
+		mRight[slot] = clamp(right);
+		mPriority[slot] = priority;
+		mStart[slot] = now;
+		mDuration[slot] = Math.max(1, durationMs) * 1000000L;
+		mAttack[slot] = Math.max(0, attackMs) * 1000000L;
+		mRelease[slot] = Math.max(0, releaseMs) * 1000000L;
+		mActive[slot] = true;
+		mPlayed++;
+		return true;
+	}
+
+	public synchronized void stopAll()
+	{
+		for (int i = 0; i < MAX_EFFECTS; i++)
+			mActive[i] = false;
+		mNumActive = 0;
+	}
+
+	//Writer thread only. Sets the direct rumble level, 0-255 per motor, and
+	//makes a tick due now so it goes out without waiting for the next one.
+	synchronized void hold(int left, int right, long now)
+	{
+		mHeldLeft = clamp(left);
+		mHeldRight = clamp(right);
+		mNextTick = now;
+	}
+
+	private static int clamp(int v)
+	{
+		return v < 0 ? 0 : (v > 255 ? 255 : v);
+	}
+
+	//envelope for effect i at 'now', 0-256
+	private int envelope(int i, long now)
+	{
+		long t = now - mStart[i];
+		long left = mDuration[i] - t;
+		int env = 256;
+		if (mAttack[i] > 0 && t < mAttack[i])
+			env = (int) (t * 256 / mAttack[i]);
+		if (mRelease[i] > 0 && left < mRelease[i])
+			env = Math.min(env, (int) (left * 256 / mRelease[i]));
+		return env;
+	}
+
+	//Writer thread only. Mixes the active effects if a tick is due, returns true
+	//if the motors need updating, the levels are then in getLeft()/getRight().
+	synchronized boolean tick(long now)
+	{
+		if (now - mNextTick < 0)
+			return false;
+		mNextTick = now + TICK_NANOS;
+
+		int top = Integer.MIN_VALUE;
+		for (int i = 0; i < MAX_EFFECTS; i++)
+		{
+			if (!mActive[i])
+				continue;
+			if (now - mStart[i] >= mDuration[i])
+			{
+				mActive[i] = false; //finished
+				mNumActive--;
+			}
+			else if (mPriority[i] > top)
+				top = mPriority[i];
+		}
+
+		int l = 0, r = 0;
+		for (int i = 0; i < MAX_EFFECTS; i++)
+		{
+			if (mActive[i] && mPriority[i] == top)
+			{
+				int env = envelope(i, now);
+				l += mLeft[i] * env >> 8;
+				r += mRight[i] * env >> 8;
+			}
+		}
+		l = Math.max(mHeldLeft, clamp(l));
+		r = Math.max(mHeldRight, clamp(r));
+
+		if (l == mSentLeft && r == mSentRight)
+			return false;
+		mSentLeft = l;
+		mSentRight = r;
+		mUpdates++;
+		return true;
+	}
+
+	//Writer thread only. Nanos until tick() has something to do, -1 when every
+	//effect has finished and the motors are already at the held level.
+	synchronized long nanosUntilTick(long now)
+	{
+		if (mNumActive == 0 && mSentLeft == mHeldLeft && mSentRight == mHeldRight)
+			return -1;
+		return Math.max(0, mNextTick - now);
+	}
+
+	int getLeft(){
+		return mSentLeft;}
+	int getRight(){
+		return mSentRight;}
+
+	public long getPlayed(){
+		return mPlayed;}
+	public long getEvicted(){
+		return mEvicted;}
+	//motor updates sent, effects and direct rumble
+	public long getUpdates(){
+		return mUpdates;}
+}
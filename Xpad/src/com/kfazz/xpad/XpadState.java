@@ -0,0 +1,143 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+
+//Packed controller state. Buttons are one 16 bit mask laid out exactly like
+//bytes 2 and 3 of the input report (byte 2 in the low byte), triggers are
+//unsigned bytes and sticks are the raw signed 16 bit axis values.
+public class XpadState {
+
+	public static final int BTN_D_UP    = 1 << 0;
+	public static final int BTN_D_DOWN  = 1 << 1;
+	public static final int BTN_D_LEFT  = 1 << 2;
+	public static final int BTN_D_RIGHT = 1 << 3;
+	public static final int BTN_START   = 1 << 4;
+	public static final int BTN_BACK    = 1 << 5;
+	public static final int BTN_LS      = 1 << 6; //left stick press
+	public static final int BTN_RS      = 1 << 7; //right stick press
+	public static final int BTN_LB      = 1 << 8;
+	public static final int BTN_RB      = 1 << 9;
+	public static final int BTN_XBOX    = 1 << 10;
+	//bit 11 is unused
+	public static final int BTN_A       = 1 << 12;
+	public static final int BTN_B       = 1 << 13;
+	public static final int BTN_X       = 1 << 14;
+	public static final int BTN_Y       = 1 << 15;
+
+	public static final int BTN_DPAD = BTN_D_UP | BTN_D_DOWN | BTN_D_LEFT | BTN_D_RIGHT;
+	public static final int BTN_ALL  = 0xFFFF;
+
+	//axis bits, for XpadInputBus subscriptions
+	public static final int AXIS_LT = 1 << 0;
+	public static final int AXIS_RT = 1 << 1;
+	public static final int AXIS_LX = 1 << 2;
+	public static final int AXIS_LY = 1 << 3;
+	public static final int AXIS_RX = 1 << 4;
+	public static final int AXIS_RY = 1 << 5;
+	public static final int AXIS_ALL = 0x3F;
+
+	short buttons;
+	byte lt, rt; //left trigger, right trigger
+	short lx, ly; //Left joystick
+	short rx, ry; //Right joystick
+
+	//decode straight from an input report laid out as described by 'l'.
+	//Absolute gets only, the buffer is not moved and nothing is allocated.
+	//Buffer must be little endian.
+	void set(ByteBuffer buf, XpadLayout l)
+	{
+		buttons = (short) (l.buttonsLow[buf.get(l.buttonOffset) & 0xFF]
+				| l.buttonsHigh[buf.get(l.buttonOffset + 1) & 0xFF]);
+		lt = buf.get(l.ltOffset);
+		rt = buf.get(l.rtOffset);
+		lx = buf.getShort(l.lxOffset);
+		ly = buf.getShort(l.lyOffset);
+		rx = buf.getShort(l.rxOffset);
+		ry = buf.getShort(l.ryOffset);
+	}
+
+	public void copyFrom(XpadState o)
+	{
+		buttons = o.buttons;
+		lt = o.lt;
+		rt = o.rt;
+		lx = o.lx;
+		ly = o.ly;
+		rx = o.rx;
+		ry = o.ry;
+	}
+
+	//whole state in 96 bits, for publishing through volatile fields
+	long packLow()
+	{
+		return (buttons & 0xFFFFL) | ((lt & 0xFFL) << 16) | ((rt & 0xFFL) << 24)
+				| ((lx & 0xFFFFL) << 32) | ((ly & 0xFFFFL) << 48);
+	}
+
+	int packHigh()
+	{
+		return (rx & 0xFFFF) | (ry << 16);
+	}
+
+	void unpack(long low, int high)
+	{
+		buttons = (short) low;
+		lt = (byte) (low >>> 16);
+		rt = (byte) (low >>> 24);
+		lx = (short) (low >>> 32);
+		ly = (short) (low >>> 48);
+		rx = (short) high;
+		ry = (short) (high >>> 16);
+	}
+
+	public int getButtons(){
+		return buttons & 0xFFFF;}
+	public boolean isDown(int mask){
+		return (buttons & mask) != 0;}
+
+	//bits that differ from an earlier snapshot
+	public int changedSince(XpadState prev){
+		return (buttons ^ prev.buttons) & 0xFFFF;}
+	//any button in mask went down since prev
+	public boolean pressedSince(XpadState prev, int mask){
+		return ((buttons ^ prev.buttons) & buttons & mask) != 0;}
+	//any button in mask came up since prev
+	public boolean releasedSince(XpadState prev, int mask){
+		return ((buttons ^ prev.buttons) & prev.buttons & mask) != 0;}
+
+	//AXIS_* bits for triggers and sticks that differ from an earlier snapshot
+	public int axesChangedSince(XpadState prev){
+		return (lt != prev.lt ? AXIS_LT : 0) | (rt != prev.rt ? AXIS_RT : 0)
+				| (lx != prev.lx ? AXIS_LX : 0) | (ly != prev.ly ? AXIS_LY : 0)
+				| (rx != prev.rx ? AXIS_RX : 0) | (ry != prev.ry ? AXIS_RY : 0);}
+
+	public int getLeftTrigger(){
+		return lt & 0xFF;}
+	public int getRightTrigger(){
+		return rt & 0xFF;}
+	//sticks scaled to -1 - 1 and triggers to 0 - 1, after any calibration
+	public float getLeftStickX(){
+		return stick(lx);}
+	public float getLeftStickY(){
+		return stick(ly);}
+	public float getRightStickX(){
+		return stick(rx);}
+	public float getRightStickY(){
+		return stick(ry);}
+	public float getLeftTriggerAmount(){
+		return (lt & 0xFF) * (1f / 255);}
+	public float getRightTriggerAmount(){
+		return (rt & 0xFF) * (1f / 255);}
+
+	private static float stick(short v){
+		return v < -32767 ? -1 : v * (1f / 32767);}
+
+	public short getLeftX(){
+		return lx;}
+	public short getLeftY(){
+		return ly;}
+	public short getRightX(){
+		return rx;}
+	public short getRightY(){
+		return ry;}
+}
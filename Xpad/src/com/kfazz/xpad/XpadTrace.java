@@ -0,0 +1,241 @@
+package com.kfazz.xpad;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import android.util.Log;
+
+//Always-on flight recorder for the hot paths, cheap enough to leave in field
+//builds where Log.d with string building is not. Every thread writes fixed
+//size records (event, phase, System.nanoTime(), two long args) into its own
+//ring, overwriting the oldest, so at any moment the last RING_SIZE records
+//per thread are there to dump when something goes wrong.
+//
+//dump() writes Chrome's trace event JSON, which chrome://tracing and
+//ui.perfetto.dev open as a timeline, one row per thread.
+//
+//Recording allocates nothing once a thread has its ring. Hot loops should
+//keep their Ring from ring() instead of going through the static helpers,
+//which look it up in a ThreadLocal every call.
+public class XpadTrace {
+
+	private static final String TAG = "XpadTrace";
+
+	public static final int RING_SIZE = 8192; //records per thread, power of two
+	static final int MAX_RINGS = 16; //past this, rings of dead threads are dropped
+
+	static final int PH_BEGIN = 0, PH_END = 1, PH_INSTANT = 2, PH_COUNTER = 3;
+	private static final String[] PH_NAMES = { "B", "E", "i", "C" };
+
+	//event ids -> names, ids are handed out by event()
+	private static final ArrayList<String> sNames = new ArrayList<String>();
+	private static final ArrayList<Ring> sRings = new ArrayList<Ring>();
+	private static volatile boolean sEnabled = true;
+	private static volatile File sDirectory;
+	private static volatile long sLastDump;
+
+	private static final ThreadLocal<Ring> sRing = new ThreadLocal<Ring>() {
+		@Override
+		protected Ring initialValue()
+		{
+			Ring r = new Ring(Thread.currentThread());
+			synchronized (sRings) {
+				//readers and writers come and go with the pads, keep the
+				//rings of the threads that died most recently
+				for (int i = 0; i < sRings.size() && sRings.size() >= MAX_RINGS; i++)
+					if (!sRings.get(i).isAlive())
+						sRings.remove(i--);
+				sRings.add(r);
+			}
+			return r;
+		}
+	};
+
+	//One thread's records, 4 longs each: event << 8 | phase, time, a, b.
+	//Only the owning thread writes. mCount is published after the record,
+	//so a dump copies what it can see and drops whatever got overwritten
+	//while it was copying.
+	public static final class Ring {
+		final String thread;
+		final long tid;
+		private final WeakReference<Thread> mThread;
+		final long[] mRecords = new long[RING_SIZE * 4];
+		volatile long mCount;
+		private long mNext; //owner's copy of mCount
+
+		Ring(Thread t)
+		{
+			thread = t.getName();
+			tid = t.getId();
+			mThread = new WeakReference<Thread>(t);
+		}
+
+		boolean isAlive()
+		{
+			Thread t = mThread.get();
+			return t != null && t.isAlive();
+		}
+
+		void record(int event, int phase, long a, long b)
+		{
+			if (!sEnabled)
+				return;
+			int i = (int) (mNext & (RING_SIZE - 1)) * 4;
+			mRecords[i] = (long) event << 8 | phase;
+			mRecords[i + 1] = System.nanoTime();
+			mRecords[i + 2] = a;
+			mRecords[i + 3] = b;
+			mCount = ++mNext;
+		}
+
+		public void begin(int event, long a, long b){
+			record(event, PH_BEGIN, a, b);}
+		public void end(int event){
+			record(event, PH_END, 0, 0);}
+		public void instant(int event, long a, long b){
+			record(event, PH_INSTANT, a, b);}
+		//shows as a graph of a over time
+		public void counter(int event, long a){
+			record(event, PH_COUNTER, a, 0);}
+	}
+
+	//id for a named event, call once and keep it in a static final
+	public static int event(String name)
+	{
+		synchronized (sNames) {
+			int i = sNames.indexOf(name);
+			if (i >= 0)
+				return i;
+			sNames.add(name);
+			return sNames.size() - 1;
+		}
+	}
+
+	//the calling thread's ring
+	public static Ring ring()
+	{
+		return sRing.get();
+	}
+
+	public static void begin(int event, long a, long b){
+		sRing.get().begin(event, a, b);}
+	public static void end(int event){
+		sRing.get().end(event);}
+	public static void instant(int event, long a, long b){
+		sRing.get().instant(event, a, b);}
+	public static void counter(int event, long a){
+		sRing.get().counter(event, a);}
+
+	public static void setEnabled(boolean enabled)
+	{
+		sEnabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return sEnabled;
+	}
+
+	//where hitch() dumps to, null (the default) to not dump
+	public static void setDirectory(File dir)
+	{
+		sDirectory = dir;
+	}
+
+	//something just went wrong (a long frame, say): dump the last few
+	//seconds to the directory, from a thread of its own so the caller does
+	//not hitch again. At most one dump per minLapseMs.
+	public static void hitch(final String reason, long minLapseMs)
+	{
+		final File dir = sDirectory;
+		long now = System.currentTimeMillis();
+		if (dir == null || now - sLastDump < minLapseMs)
+			return;
+		sLastDump = now;
+		final File file = new File(dir, "xpad-" + now + ".trace.json");
+		new Thread("XpadTrace dump") {
+			public void run()
+			{
+				try {
+					dump(file);
+					Log.i(TAG, reason + ", trace in " + file);
+				} catch (IOException e) {
+					Log.d(TAG, "dump to " + file + " failed: " + e);
+				}
+			}
+		}.start();
+	}
+
+	public static void dump(File file) throws IOException
+	{
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	//every thread's ring, in the trace event JSON format. Recording goes on
+	//while this runs.
+	public static void dump(Writer out) throws IOException
+	{
+		Ring[] rings;
+		synchronized (sRings) {
+			rings = sRings.toArray(new Ring[sRings.size()]);
+		}
+		String[] names;
+		synchronized (sNames) {
+			names = sNames.toArray(new String[sNames.size()]);
+		}
+
+		out.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+		boolean first = true;
+		long[] copy = new long[RING_SIZE * 4];
+		for (Ring r : rings)
+		{
+			if (!first)
+				out.write(",\n");
+			first = false;
+			out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + r.tid
+					+ ",\"args\":{\"name\":\"" + r.thread.replace("\"", "'") + "\"}}");
+
+			long end = r.mCount;
+			System.arraycopy(r.mRecords, 0, copy, 0, copy.length);
+			//anything the owner lapped while we copied is garbage
+			long start = Math.max(0, r.mCount - RING_SIZE + 1);
+			int depth = 0;
+			for (long n = Math.max(start, end - RING_SIZE); n < end; n++)
+			{
+				int i = (int) (n & (RING_SIZE - 1)) * 4;
+				int event = (int) (copy[i] >>> 8);
+				int phase = (int) (copy[i] & 0xFF);
+				if (phase == PH_BEGIN)
+					depth++;
+				else if (phase == PH_END && depth-- == 0)
+				{
+					depth = 0;
+					continue; //its begin was overwritten
+				}
+				String name = event < names.length ? names[event] : "event " + event;
+				out.write(",\n{\"name\":\"" + name + "\",\"ph\":\"" + PH_NAMES[phase]
+						+ "\",\"ts\":" + copy[i + 1] / 1000.0 //microseconds
+						+ ",\"pid\":1,\"tid\":" + r.tid);
+				if (phase == PH_INSTANT)
+					out.write(",\"s\":\"t\"");
+				if (phase == PH_COUNTER)
+					out.write(",\"args\":{\"value\":" + copy[i + 2] + "}}");
+				else if (phase != PH_END)
+					out.write(",\"args\":{\"a\":" + copy[i + 2] + ",\"b\":" + copy[i + 3] + "}}");
+				else
+					out.write("}");
+			}
+		}
+		out.write("\n]}\n");
+	}
+}
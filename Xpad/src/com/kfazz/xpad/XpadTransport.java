@@ -0,0 +1,43 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+
+//What XpadReader and XpadOutput need from the bus, so the driver can run
+//against something other than a UsbDeviceConnection. A transport carries one
+//or more slots (a controller each, four on a wireless receiver), every slot
+//with an input and an output pipe.
+//
+//Reads are numbered by the caller: open them once with a buffer, then queue
+//and wait on them as often as needed. Only the reader thread reads, writes
+//come from the slots' writer threads.
+public interface XpadTransport {
+
+	//waitRead() result when something other than one of our reads completed
+	public static final int WAIT_OTHER = -1;
+	//waitRead() result when no more input will ever arrive
+	public static final int WAIT_CLOSED = -2;
+
+	public int getSlotCount();
+
+	//largest input report a slot can deliver
+	public int getMaxPacketSize(int slot);
+
+	//binds read 'id' to the slot's input pipe and its buffer
+	public boolean openRead(int id, int slot, ByteBuffer buffer);
+
+	//starts read 'id' into its buffer (which the caller has cleared)
+	public boolean queueRead(int id, int length);
+
+	//blocks until a queued read completes and returns its id, the buffer's
+	//limit marks the end of the data when the transport knows the length
+	public int waitRead();
+
+	//cancels and releases every opened read
+	public void closeReads();
+
+	//releases the bus once reading and writing are over, after closeReads()
+	public void close();
+
+	//blocking write to the slot's output pipe, bytes sent or < 0 on failure
+	public int write(int slot, byte[] data, int length, int timeoutMs);
+}
@@ -0,0 +1,99 @@
+package com.kfazz.xpad;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbRequest;
+
+//XpadTransport over an open usb connection, one slot per claimed interface.
+//Reads are UsbRequests on the interface's in endpoint, writes are bulk
+//transfers on its out endpoint.
+class XpadUsbTransport implements XpadTransport {
+
+	private final UsbDeviceConnection mConnection;
+	private final ArrayList<UsbEndpoint> mIn = new ArrayList<UsbEndpoint>();
+	private final ArrayList<UsbEndpoint> mOut = new ArrayList<UsbEndpoint>();
+
+	private UsbRequest[] mRequests = new UsbRequest[0];
+	private ByteBuffer[] mBuffers = new ByteBuffer[0];
+
+	XpadUsbTransport(UsbDeviceConnection connection)
+	{
+		mConnection = connection;
+	}
+
+	//the interface must already be claimed, returns its slot number
+	int addSlot(UsbInterface intf)
+	{
+		mIn.add(intf.getEndpoint(0)); // Controller events
+		mOut.add(intf.getEndpoint(1)); //messages to controller
+		return mIn.size() - 1;
+	}
+
+	public int getSlotCount()
+	{
+		return mIn.size();
+	}
+
+	public int getMaxPacketSize(int slot)
+	{
+		return mIn.get(slot).getMaxPacketSize();
+	}
+
+	public boolean openRead(int id, int slot, ByteBuffer buffer)
+	{
+		if (id >= mRequests.length)
+		{
+			UsbRequest[] requests = new UsbRequest[id + 1];
+			ByteBuffer[] buffers = new ByteBuffer[id + 1];
+			System.arraycopy(mRequests, 0, requests, 0, mRequests.length);
+			System.arraycopy(mBuffers, 0, buffers, 0, mBuffers.length);
+			mRequests = requests;
+			mBuffers = buffers;
+		}
+		UsbRequest request = new UsbRequest();
+		if (!request.initialize(mConnection, mIn.get(slot)))
+			return false;
+		mRequests[id] = request;
+		mBuffers[id] = buffer;
+		return true;
+	}
+
+	public boolean queueRead(int id, int length)
+	{
+		return mRequests[id].queue(mBuffers[id], length);
+	}
+
+	public int waitRead()
+	{
+		UsbRequest request = mConnection.requestWait();
+		for (int i = 0; i < mRequests.length; i++)
+			if (mRequests[i] != null && mRequests[i].equals(request))
+				return i;
+		return WAIT_OTHER;
+	}
+
+	public void closeReads()
+	{
+		for (UsbRequest request : mRequests)
+		{
+			if (request == null)
+				continue;
+			request.cancel();
+			request.close();
+		}
+	}
+
+	public void close()
+	{
+		mConnection.close();
+	}
+
+	public int write(int slot, byte[] data, int length, int timeoutMs)
+	{
+		return mConnection.bulkTransfer(mOut.get(slot), data, length, timeoutMs);
+	}
+}